@@ -1,5 +1,22 @@
 grammar ICSS;
 
+// Properties
+// NOTE: Property names are lexed as LOWER_IDENT and then get one of these types from the PropertySchema
+// (see property-schema.properties), so adding a property doesn't need a change in here.
+tokens { COLOR_PROPERTY, DIM_PROPERTY }
+
+@lexer::members {
+    private final PropertyTokens propertyTokens = new PropertyTokens(this);
+
+    @Override
+    public Token emit() {
+        if (_type == LOWER_IDENT) {
+            _type = propertyTokens.typeOfCurrentToken();
+        }
+        return super.emit();
+    }
+}
+
 //--- LEXER: ---
 // NOTE: variabledef and propertyexpr take way too long to evaluate for level3.icss for example. (0.5 and 0.3 respectively)
 // Would be good to rewrite grammar for performance. But I wont.
@@ -8,10 +25,6 @@ grammar ICSS;
 IF: 'if';
 ELSE: 'else';
 
-// Properties
-COLOR_PROPERTY : 'color' | 'background-color';
-DIM_PROPERTY : 'width' | 'height' ;
-
 //Literals
 BOOLEAN : 'TRUE' | 'FALSE' ;
 PIXELSIZE: [0-9]+ 'px';
@@ -23,7 +36,7 @@ fragment HEXDIGIT : [0-9a-fA-F] ;
 HEXVAL : '#' HEXDIGIT HEXDIGIT HEXDIGIT HEXDIGIT HEXDIGIT HEXDIGIT ;
 
 // General identifiers
-// Currently using for: selectors (Specifics like class or Id will be handled in the ASTListener)
+// Currently using for: selectors (Specifics like class or Id will be handled in the ASTListener) and properties (see the top)
 LOWER_IDENT: ([a-z] | '#' | '.' ) [a-z0-9\-]*;
 // Currently using for: variable names
 CAPITAL_IDENT: [A-Z] [A-Za-z0-9_]*;
@@ -68,6 +81,7 @@ factor
     : SCALAR
     | PERCENTAGE
     | PIXELSIZE
+    | HEXVAL // Colors can be added/subtracted (per channel)
     | CAPITAL_IDENT
     ;
 // ---
@@ -93,7 +107,7 @@ selectorstmt
 
 // Expressions for setting properties (e.g., width, height) and only allow grouped values. (Allow hexvals for colors, dimvals/math for dimensions)
 propertyexpr
-    : COLOR_PROPERTY COLON colorValue SEMICOLON
+    : COLOR_PROPERTY COLON (colorValue | mathExpr) SEMICOLON
     | DIM_PROPERTY   COLON (factor | mathExpr) SEMICOLON
     ;
 
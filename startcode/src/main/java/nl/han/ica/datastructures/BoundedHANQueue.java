@@ -0,0 +1,18 @@
+package nl.han.ica.datastructures;
+
+/**
+ * {@link HANQueue} that never grows: 'enqueue' throws and 'offer' returns false once the capacity is reached.
+ */
+public class BoundedHANQueue<T> extends HANQueue<T> {
+
+    /**
+     * @param capacity max. amount of elements, rounded up to a power of two
+     */
+    public BoundedHANQueue(int capacity) {
+        super(capacity, false);
+    }
+
+    public boolean isFull() {
+        return getSize() == getCapacity();
+    }
+}
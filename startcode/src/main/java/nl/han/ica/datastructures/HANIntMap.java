@@ -0,0 +1,113 @@
+package nl.han.ica.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * Hash map with primitive int keys (no boxing), open addressing with linear probing.
+ * Used for the scopes of the checker, which are keyed on symbol ids (see SymbolTable) instead of variable names.
+ *
+ * NOTE: Keys must be >= 0, there is no remove (scopes are dropped as a whole).
+ * @param <V> type of the values
+ */
+public class HANIntMap<V> {
+
+    private static final int EMPTY = -1;
+    private static final int DEFAULT_CAPACITY = 8; // Most scopes only hold a handful of variables
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public HANIntMap() {
+        keys = newKeys(DEFAULT_CAPACITY);
+        values = new Object[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Adds or replaces the value for key
+     * @param key key (>= 0)
+     * @param value value to store
+     */
+    public void put(int key, V value) {
+        if (key < 0)
+            throw new IllegalArgumentException("Key must be >= 0");
+
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            values[index] = value;
+            return;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        size++;
+
+        // Keep the load factor at or below 0.5, so probe sequences stay short
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Gets the value for key
+     * @param key key to look up
+     * @return the value, or null when the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key < 0) return null;
+
+        int index = indexOf(key);
+        return keys[index] == key ? (V) values[index] : null;
+    }
+
+    public boolean containsKey(int key) {
+        return key >= 0 && keys[indexOf(key)] == key;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Slot of the key, or the empty slot where it would go
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = newKeys(oldKeys.length * 2);
+        values = new Object[oldKeys.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static int[] newKeys(int capacity) {
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    // Symbol ids are dense (0, 1, 2...), spread them a bit so neighbours don't end up in one run
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
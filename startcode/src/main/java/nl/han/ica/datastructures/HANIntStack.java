@@ -0,0 +1,54 @@
+package nl.han.ica.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * Stack of primitive ints on a growable array (no boxing), companion of {@link HANStack} for iterative
+ * tree walks that need to keep a counter or state per level.
+ */
+public class HANIntStack {
+
+    private int[] stack = new int[16];
+    private int size;
+
+    /**
+     * pushes value to the top of the stack
+     * @param value value to push
+     */
+    public void push(int value) {
+        if (size == stack.length) {
+            stack = Arrays.copyOf(stack, size * 2);
+        }
+        stack[size++] = value;
+    }
+
+    /**
+     * Pops (and removes) value at top of stack
+     * @return popped value
+     */
+    public int pop() {
+        if (size == 0)
+            throw new IllegalStateException("Stack is empty");
+
+        return stack[--size];
+    }
+
+    /**
+     * Peeks at the top of the stack. Does not remove anything
+     * @return value at the top of the stack
+     */
+    public int peek() {
+        if (size == 0)
+            throw new IllegalStateException("Stack is empty");
+
+        return stack[size - 1];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
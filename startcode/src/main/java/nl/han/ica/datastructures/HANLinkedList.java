@@ -1,31 +1,47 @@
 package nl.han.ica.datastructures;
 
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
 public class HANLinkedList<T> implements IHANLinkedList<T> {
 
     private LinkedListNode<T> head;
+    private LinkedListNode<T> tail;
     private int size;
+
+    // Incremented on every structural change, so iterators can fail fast
+    private int modCount;
     // java:S1192 SonarLinter
 
     private static final String OUT_OF_BOUNDS_MESSAGE = "Index out of bounds";
 
     public HANLinkedList() {
         head = null;
+        tail = null;
         size = 0;
     }
 
     @Override
     public void addFirst(T value) {
-        LinkedListNode<T> newNode = new LinkedListNode<>(value);
-        newNode.next = head;
-        head = newNode;
-        size++;
+        linkBefore(value, head);
+    }
+
+    @Override
+    public void addLast(T value) {
+        linkBefore(value, null);
     }
 
     @Override
     public void clear() {
         // Assuming the garbage collector will clean it up later.
         head = null;
+        tail = null;
         size = 0;
+        modCount++;
     }
 
     @Override
@@ -34,21 +50,7 @@ public class HANLinkedList<T> implements IHANLinkedList<T> {
             throw new IndexOutOfBoundsException(OUT_OF_BOUNDS_MESSAGE); // NOTE: Not going to handle the exceptions, but just doing this for code quality reasons.
         }
 
-        if (index == 0) {
-            addFirst(value);
-            return;
-        }
-
-        LinkedListNode<T> prev = head;
-        for (int i = 0; i < index - 1; i++) {
-            prev = prev.next;
-        }
-
-        LinkedListNode<T> newNode = new LinkedListNode<>(value);
-        newNode.next = prev.next;
-        prev.next = newNode;
-
-        size++;
+        linkBefore(value, index == size ? null : node(index));
     }
 
     @Override
@@ -57,18 +59,7 @@ public class HANLinkedList<T> implements IHANLinkedList<T> {
             throw new IndexOutOfBoundsException(OUT_OF_BOUNDS_MESSAGE); // NOTE: Not going to handle the exceptions, but just doing this for code quality reasons.
         }
 
-        if (index == 0) {
-            removeFirst();
-            return;
-        }
-
-        LinkedListNode<T> prev = head;
-        for (int i = 0; i < index - 1; i++) {
-            prev = prev.next;
-        }
-
-        prev.next = prev.next.next;
-        size--;
+        unlink(node(index));
     }
 
 
@@ -78,12 +69,7 @@ public class HANLinkedList<T> implements IHANLinkedList<T> {
             throw new IndexOutOfBoundsException(OUT_OF_BOUNDS_MESSAGE); // NOTE: Not going to handle the exceptions, but just doing this for code quality reasons.
         }
 
-        LinkedListNode<T> current = head;
-        for (int i = 0; i < index; i++) {
-            current = current.next;
-        }
-
-        return current.value;
+        return node(index).value;
     }
 
     @Override
@@ -92,8 +78,7 @@ public class HANLinkedList<T> implements IHANLinkedList<T> {
             throw new IllegalStateException("List is empty"); // NOTE: Again not handling this somewhere.
         }
 
-        head = head.next;
-        size--;
+        unlink(head);
     }
 
     @Override
@@ -106,10 +91,187 @@ public class HANLinkedList<T> implements IHANLinkedList<T> {
         return head.value;
     }
 
+    @Override
+    public T getLast() {
+
+        if (tail == null) {
+            return null;
+        }
+
+        return tail.value;
+    }
+
     @Override
     public int getSize() {
         return size;
     }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new ListItr(0);
+    }
+
+    @Override
+    public ListIterator<T> listIterator() {
+        return new ListItr(0);
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        // Size is known up-front, so streams can presize (and split) properly
+        return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED);
+    }
+
+    // Walks from whichever end is closest, so get(size - 1) is O(1)
+    private LinkedListNode<T> node(int index) {
+        LinkedListNode<T> current;
+        if (index < size / 2) {
+            current = head;
+            for (int i = 0; i < index; i++) {
+                current = current.next;
+            }
+        } else {
+            current = tail;
+            for (int i = size - 1; i > index; i--) {
+                current = current.prev;
+            }
+        }
+        return current;
+    }
+
+    // Inserts a new node before 'successor' (null = at the end)
+    private void linkBefore(T value, LinkedListNode<T> successor) {
+        LinkedListNode<T> newNode = new LinkedListNode<>(value);
+        LinkedListNode<T> predecessor = successor == null ? tail : successor.prev;
+
+        newNode.prev = predecessor;
+        newNode.next = successor;
+
+        if (predecessor == null) {
+            head = newNode;
+        } else {
+            predecessor.next = newNode;
+        }
+        if (successor == null) {
+            tail = newNode;
+        } else {
+            successor.prev = newNode;
+        }
+
+        size++;
+        modCount++;
+    }
+
+    private void unlink(LinkedListNode<T> node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+
+        node.prev = null;
+        node.next = null;
+        size--;
+        modCount++;
+    }
+
+    // Cursor sits between 'next.prev' and 'next', same idea as java.util.LinkedList's iterator
+    private class ListItr implements ListIterator<T> {
+        private LinkedListNode<T> next;
+        private LinkedListNode<T> lastReturned;
+        private int nextIndex;
+        private int expectedModCount = modCount;
+
+        ListItr(int index) {
+            next = index == size ? null : node(index);
+            nextIndex = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public T next() {
+            checkForComodification();
+            if (!hasNext()) throw new NoSuchElementException();
+
+            lastReturned = next;
+            next = next.next;
+            nextIndex++;
+            return lastReturned.value;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return nextIndex > 0;
+        }
+
+        @Override
+        public T previous() {
+            checkForComodification();
+            if (!hasPrevious()) throw new NoSuchElementException();
+
+            next = next == null ? tail : next.prev;
+            lastReturned = next;
+            nextIndex--;
+            return lastReturned.value;
+        }
+
+        @Override
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        @Override
+        public void remove() {
+            checkForComodification();
+            if (lastReturned == null) throw new IllegalStateException();
+
+            LinkedListNode<T> lastNext = lastReturned.next;
+            unlink(lastReturned);
+            if (next == lastReturned) {
+                next = lastNext; // Removed after previous()
+            } else {
+                nextIndex--; // Removed after next()
+            }
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void set(T value) {
+            if (lastReturned == null) throw new IllegalStateException();
+            checkForComodification();
+            lastReturned.value = value;
+        }
+
+        @Override
+        public void add(T value) {
+            checkForComodification();
+            lastReturned = null;
+            linkBefore(value, next);
+            nextIndex++;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
 }
 
 
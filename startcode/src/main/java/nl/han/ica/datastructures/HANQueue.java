@@ -0,0 +1,125 @@
+package nl.han.ica.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * Queue on a power-of-two ring buffer, so wrapping around is a bit mask instead of a modulo or a branch.
+ * Grows (doubles) when full, see {@link BoundedHANQueue} for a fixed capacity.
+ */
+public class HANQueue<T> implements IHANQueue<T> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    // Largest power of two an array can hold
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private Object[] elements;
+    private int mask;
+    private int head; // Index of the front element
+    private int size;
+
+    private final boolean growable;
+
+    public HANQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity expected amount of elements, rounded up to a power of two
+     */
+    public HANQueue(int initialCapacity) {
+        this(initialCapacity, true);
+    }
+
+    protected HANQueue(int capacity, boolean growable) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.elements = new Object[powerOfTwo(capacity)];
+        this.mask = elements.length - 1;
+        this.growable = growable;
+    }
+
+    @Override
+    public void clear() {
+        // Null the used slots only, so the GC can collect the elements
+        for (int i = 0; i < size; i++) {
+            elements[(head + i) & mask] = null;
+        }
+        head = 0;
+        size = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void enqueue(T value) {
+        if (!offer(value)) {
+            throw new IllegalStateException("Queue is full"); // NOTE: Only happens for bounded queues.
+        }
+    }
+
+    /**
+     * Adds value to the back of the queue, unless the queue is bounded and full
+     * @param value value to add
+     * @return true when added, false when there was no room
+     */
+    public boolean offer(T value) {
+        if (size == elements.length) {
+            if (!growable || elements.length == MAX_CAPACITY) return false;
+            grow();
+        }
+        elements[(head + size) & mask] = value;
+        size++;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T dequeue() {
+        if (size == 0)
+            return null;
+
+        T value = (T) elements[head];
+        elements[head] = null;
+        head = (head + 1) & mask;
+        size--;
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        if (size == 0)
+            return null;
+
+        return (T) elements[head];
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the amount of elements that fit before the buffer has to grow (or is full)
+     */
+    public int getCapacity() {
+        return elements.length;
+    }
+
+    // Doubles the buffer and unwraps the elements to the start of the new one
+    private void grow() {
+        Object[] grown = Arrays.copyOfRange(elements, head, head + elements.length * 2);
+        System.arraycopy(elements, 0, grown, elements.length - head, head);
+        elements = grown;
+        mask = grown.length - 1;
+        head = 0;
+    }
+
+    static int powerOfTwo(int capacity) {
+        return capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    }
+}
@@ -26,4 +26,14 @@ public class HANStack<T> implements IHANStack<T> {
 
         return stack.get(stack.size() - 1);
     }
+
+    @Override
+    public boolean isEmpty() {
+        return stack.isEmpty();
+    }
+
+    @Override
+    public int getSize() {
+        return stack.size();
+    }
 }
@@ -1,12 +1,22 @@
 package nl.han.ica.datastructures;
 
-public interface IHANLinkedList<T> {
+import java.util.ListIterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public interface IHANLinkedList<T> extends Iterable<T> {
     /**
      * Adds value to the front of the list
      * @param value generic value to be added
      */
     void addFirst(T value);
 
+    /**
+     * Adds value to the end of the list in O(1) time
+     * @param value generic value to be added
+     */
+    void addLast(T value);
+
     /**
      * Clears list. Size equals 0 afterwards
      */
@@ -38,14 +48,35 @@ public interface IHANLinkedList<T> {
     void removeFirst();
 
     /**
-     * Returns first element in O(n) time
+     * Returns first element in O(1) time
      * @return first element
      */
     T getFirst();
 
+    /**
+     * Returns last element in O(1) time
+     * @return last element, null when the list is empty
+     */
+    T getLast();
+
     /**
      * Determines size of the list, equals the number of stored items but not the header node
      * @return number of items in list
      */
     int getSize();
+
+    /**
+     * Iterator that can walk both ways and modify the list at its cursor.
+     * Fails fast (ConcurrentModificationException) when the list is modified other than through the iterator.
+     * @return iterator positioned before the first element
+     */
+    ListIterator<T> listIterator();
+
+    /**
+     * Sequential stream over the elements, from first to last
+     * @return stream of the elements
+     */
+    default Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
 }
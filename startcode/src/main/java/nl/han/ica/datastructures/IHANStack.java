@@ -18,4 +18,16 @@ public interface IHANStack<T> {
      * @return value at the top of the stack
      */
     T peek();
+
+    /**
+     * Checks whether the stack is empty or not
+     * @return true when empty, false otherwise
+     */
+    boolean isEmpty();
+
+    /**
+     * Size of stack
+     * @return the number of items on the stack
+     */
+    int getSize();
 }
@@ -3,9 +3,11 @@ package nl.han.ica.datastructures;
 public class LinkedListNode<T> {
     T value;
     LinkedListNode<T> next;
+    LinkedListNode<T> prev;
 
     public LinkedListNode(T value) {
         this.value = value;
         this.next = null;
+        this.prev = null;
     }
 }
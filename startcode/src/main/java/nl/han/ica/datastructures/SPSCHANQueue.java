@@ -0,0 +1,108 @@
+package nl.han.ica.datastructures;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread (e.g. a reader handing work to a worker).
+ *
+ * The producer only writes 'tail' and the consumer only writes 'head', so there is no compare-and-swap, just ordered
+ * stores (lazySet) that publish the slot before the new index becomes visible to the other side.
+ * 'enqueue'/'offer' may only be called from the producer, 'dequeue'/'peek'/'clear' only from the consumer.
+ * 'getSize' and 'isEmpty' can be called from anywhere, but are a snapshot.
+ */
+public class SPSCHANQueue<T> implements IHANQueue<T> {
+
+    private final AtomicReferenceArray<T> elements;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong(); // Next slot to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // Next slot to write, written by the producer
+
+    // Each side caches the last index it saw of the other side, so it only reads the shared (contended) one when needed
+    private long cachedHead; // Producer only
+    private long cachedTail; // Consumer only
+
+    /**
+     * @param capacity max. amount of elements, rounded up to a power of two
+     */
+    public SPSCHANQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        elements = new AtomicReferenceArray<>(HANQueue.powerOfTwo(capacity));
+        mask = elements.length() - 1;
+    }
+
+    @Override
+    public void clear() {
+        while (dequeue() != null) {
+            // Drain, only the consumer may move 'head'
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getSize() == 0;
+    }
+
+    @Override
+    public void enqueue(T value) {
+        if (!offer(value)) {
+            throw new IllegalStateException("Queue is full");
+        }
+    }
+
+    /**
+     * Adds value to the back of the queue (producer thread only)
+     * @param value value to add, not null (null is what an empty slot looks like)
+     * @return true when added, false when the queue is full
+     */
+    public boolean offer(T value) {
+        if (value == null) throw new NullPointerException();
+
+        long currentTail = tail.get();
+        if (currentTail - cachedHead == elements.length()) {
+            cachedHead = head.get();
+            if (currentTail - cachedHead == elements.length()) return false;
+        }
+
+        elements.lazySet((int) currentTail & mask, value);
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    @Override
+    public T dequeue() {
+        long currentHead = head.get();
+        if (currentHead == cachedTail) {
+            cachedTail = tail.get();
+            if (currentHead == cachedTail) return null;
+        }
+
+        int index = (int) currentHead & mask;
+        T value = elements.get(index);
+        elements.lazySet(index, null);
+        head.lazySet(currentHead + 1);
+        return value;
+    }
+
+    @Override
+    public T peek() {
+        long currentHead = head.get();
+        if (currentHead == tail.get()) return null;
+
+        return elements.get((int) currentHead & mask);
+    }
+
+    @Override
+    public int getSize() {
+        // Read head first: it can only grow towards tail, so the difference never goes negative
+        long currentHead = head.get();
+        return (int) (tail.get() - currentHead);
+    }
+
+    public int getCapacity() {
+        return elements.length();
+    }
+}
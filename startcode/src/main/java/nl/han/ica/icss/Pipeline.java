@@ -4,21 +4,39 @@ import nl.han.ica.icss.ast.AST;
 import nl.han.ica.icss.checker.Checker;
 import nl.han.ica.icss.checker.SemanticError;
 import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.metrics.ASTStatistics;
+import nl.han.ica.icss.metrics.PipelineMetrics;
+import nl.han.ica.icss.metrics.StageMetrics;
+import nl.han.ica.icss.metrics.events.*;
 import nl.han.ica.icss.parser.ASTListener;
-import nl.han.ica.icss.parser.ICSSLexer;
 import nl.han.ica.icss.parser.ICSSParser;
+import nl.han.ica.icss.parser.ParserPool;
+import nl.han.ica.icss.transforms.ConstantFolder;
+import nl.han.ica.icss.transforms.OperationFlattener;
 import nl.han.ica.icss.transforms.Evaluator;
+import nl.han.ica.icss.transforms.OutputOptimizer;
+import nl.han.ica.icss.transforms.PassManager;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.atn.ATNConfigSet;
 import org.antlr.v4.runtime.dfa.DFA;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.IterativeParseTreeWalker;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
 
+/*
+ NOTE:
+ The stages stop with a CancellationException when the thread running them is interrupted (checked per parsed rule and in
+ the walks of the check, transform and generate stages). The GUI interrupts a run once its result isn't needed anymore,
+ so a stale compile of a large input doesn't keep the (single) pipeline thread busy. The stage that was stopped, and the
+ ones after it, count as not done.
+ */
 public class Pipeline implements ANTLRErrorListener {
 
     private AST ast;
@@ -27,6 +45,24 @@ public class Pipeline implements ANTLRErrorListener {
     private boolean transformed = false;
     private List<String> errors;
 
+    // Checked AST after constant folding (see ConstantFolder), every transform evaluates a copy of it
+    private AST optimized;
+
+    // Stack size of the thread that retries parsing input that is nested too deep for the normal stack (-Dicss.parser.deepStackBytes=...)
+    private static final long DEEP_PARSE_STACK_BYTES = Long.getLong("icss.parser.deepStackBytes", 512L * 1024 * 1024);
+
+    // Per-stage timings and counters, only collected when enabled (counting walks the whole AST)
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private boolean collectMetrics = false;
+
+    // Removes overridden declarations and merges rules with the same declarations after evaluating (see OutputOptimizer)
+    private boolean optimizeOutput = true;
+    // Colors as '#rgb' when possible (see Generator.setShortColors)
+    private boolean shortColors = Boolean.getBoolean("icss.generator.shortColors");
+    // Runs the helpers of a parallel generate (see Generator.setExecutor), none by default
+    private Executor generateExecutor;
+    private int generateHelpers;
+
     public Pipeline() {
         errors = new ArrayList<>();
     }
@@ -46,32 +82,83 @@ public class Pipeline implements ANTLRErrorListener {
     public boolean isTransformed() {
         return transformed;
     }
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+    public boolean isCollectingMetrics() {
+        return collectMetrics;
+    }
+    public void setCollectMetrics(boolean collectMetrics) {
+        this.collectMetrics = collectMetrics;
+    }
+    public boolean isOptimizingOutput() {
+        return optimizeOutput;
+    }
+    public void setOptimizeOutput(boolean optimizeOutput) {
+        this.optimizeOutput = optimizeOutput;
+    }
+    public void setShortColors(boolean shortColors) {
+        this.shortColors = shortColors;
+    }
+    public void setGenerateExecutor(Executor generateExecutor, int generateHelpers) {
+        this.generateExecutor = generateExecutor;
+        this.generateHelpers = generateHelpers;
+    }
 
     public void parseString(String input) {
+        metrics.clear(); // A new parse starts a new run
+        StageMetrics stageMetrics = collectMetrics ? StageMetrics.start("parse") : null;
+        int tokenCount;
+        parsed = checked = transformed = false;
+        optimized = null;
+
+        try {
+            tokenCount = parse(input);
+        } catch (StackOverflowError e) {
+            // NOTE: Antlr's parser is recursive descent, so (thousands of) nested if-clauses can overflow the normal stack.
+            // Everything after parsing walks the tree without recursion, so only the parse is retried on a thread with a big stack.
+            tokenCount = parseOnLargeStack(input);
+        }
+        parsed = errors.isEmpty();
 
-        // Lex (with Antlr's generated lexer)
+        if (stageMetrics != null) {
+            finishStage(stageMetrics.stop().count("tokens", tokenCount));
+        }
+    }
+    // Lex & Parse (with Antlr's generated lexer and parser, re-used per thread through the ParserPool), returns the amount of tokens
+    private int parse(String input) {
         CharStream inputStream = CharStreams.fromString(input);
-        ICSSLexer lexer = new ICSSLexer(inputStream);
-        lexer.removeErrorListeners();
-        lexer.addErrorListener(this);
         errors.clear();
         try {
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            ICSSParser parser = ParserPool.acquire(inputStream, this);
 
-            //Parse (with Antlr's generated parser)
-            ICSSParser parser = new ICSSParser(tokens);
-            parser.removeErrorListeners();
-            parser.addErrorListener(this);
+            // Lex everything up-front, so lexing and parsing show up as separate (JFR) events
+            LexEvent lexEvent = new LexEvent();
+            lexEvent.begin();
+            ((BufferedTokenStream) parser.getTokenStream()).fill();
+            lexEvent.inputChars = input.length();
+            lexEvent.commit();
+            stopIfInterrupted("Parse");
 
+            ParseEvent parseEvent = new ParseEvent();
+            parseEvent.begin();
             ParseTree parseTree = parser.stylesheet();
+            parseEvent.inputChars = input.length();
+            parseEvent.commit();
+            stopIfInterrupted("Parse");
 
             //Extract AST from the Antlr parse tree
-            ASTListener listener = new ASTListener();
-            ParseTreeWalker walker = new ParseTreeWalker();
+            ASTBuildEvent astBuildEvent = new ASTBuildEvent();
+            astBuildEvent.begin();
+            ASTListener listener = new ASTListener(input); // Interns names straight from the input (no String per token)
+            ParseTreeWalker walker = new IterativeParseTreeWalker(); // No recursion, long 'a + b + c...' chains are very deep parse trees
             walker.walk(listener, parseTree);
+            astBuildEvent.commit();
 
             this.ast = listener.getAST();
 
+            return parser.getTokenStream().size();
+
         } catch (RecognitionException e) {
             this.ast = new AST();
             errors.add(e.getMessage());
@@ -79,15 +166,51 @@ public class Pipeline implements ANTLRErrorListener {
         } catch (ParseCancellationException e) {
             this.ast = new AST();
             errors.add("Syntax error");
+        } finally {
+            ParserPool.release();
         }
-        parsed = errors.isEmpty();
-        checked = transformed = false;
+        return 0;
+    }
+
+    private int parseOnLargeStack(String input) {
+        int[] tokenCount = new int[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                tokenCount[0] = parse(input);
+            } catch (StackOverflowError e) {
+                this.ast = new AST();
+                errors.add("Input is nested too deeply");
+            }
+        }, "icss-deep-parse", DEEP_PARSE_STACK_BYTES);
+
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            thread.interrupt(); // Stops its parse as well (see ParserPool)
+            this.ast = new AST();
+            errors.add("Parse was interrupted");
+        }
+        return tokenCount[0];
     }
+
     public boolean check() {
             if(ast == null)
                 return false;
 
+            StageMetrics stageMetrics = collectMetrics ? StageMetrics.start("check") : null;
+            checked = transformed = false;
+            optimized = null;
+
+            CheckEvent checkEvent = new CheckEvent();
+            checkEvent.begin();
            (new Checker()).check(this.ast);
+            checkEvent.commit();
+
+            if (stageMetrics != null) {
+                finishStage(stageMetrics.stop());
+            }
 
             ArrayList<SemanticError> errors = this.ast.getErrors();
             if (!errors.isEmpty()) {
@@ -97,7 +220,6 @@ public class Pipeline implements ANTLRErrorListener {
             }
 
             checked = errors.isEmpty();
-            transformed = false;
             return errors.isEmpty();
     }
 
@@ -106,17 +228,123 @@ public class Pipeline implements ANTLRErrorListener {
     }
 
     public void transform() {
+        transform(true);
+    }
+
+    /*
+     Folds the constants of (a copy of) the checked AST once (the result is cached), and evaluates what's left.
+     keepOptimized: fold a copy, so the checked AST stays as it is (e.g. for the GUI), and evaluate a copy of the result,
+     so the next transform (the GUI transforming again) doesn't have to fold again.
+     A one-shot compile doesn't need the checked or the optimized AST afterwards and does both in place.
+     */
+    private void transform(boolean keepOptimized) {
         if(ast == null)
             return;
 
-        (new Evaluator()).apply(ast);
+        StageMetrics stageMetrics = collectMetrics ? StageMetrics.start("transform") : null;
+        transformed = false;
+        ConstantFolder folder = null;
+        OperationFlattener flattener = null;
+
+        if (optimized == null) {
+            optimized = keepOptimized ? ast.copy() : ast;
+
+            // NOTE: Needs the scopes/slots of the checker, so only a checked AST can be folded
+            if (checked) {
+                folder = new ConstantFolder();
+                flattener = new OperationFlattener(); // Same walk, flattens what couldn't be folded
+                PassManager folding = new PassManager().add(folder).add(flattener);
+                folding.setTimed(stageMetrics != null);
+                folding.run(optimized);
+                if (stageMetrics != null) {
+                    folding.getPassNanos().forEach((pass, nanos) -> stageMetrics.count("pass." + pass + ".nanos", nanos));
+                }
+            }
+        }
+        ast = keepOptimized ? optimized.copy() : optimized;
+        if (!keepOptimized) {
+            optimized = null; // Evaluated in place, so it's not the optimized AST anymore
+        }
+
+        // NOTE: Every pass is added to the same PassManager, passes with node hooks share a single walk of the tree.
+        Evaluator evaluator = new Evaluator();
+        PassManager passes = new PassManager().add(evaluator);
+        OutputOptimizer optimizer = null;
+        if (optimizeOutput) {
+            optimizer = new OutputOptimizer();
+            passes.add(optimizer);
+        }
+        passes.setTimed(stageMetrics != null);
 
+        EvaluateEvent evaluateEvent = new EvaluateEvent();
+        evaluateEvent.begin();
+        passes.run(ast);
+        evaluateEvent.commit();
+
+        if (stageMetrics != null) {
+            stageMetrics.stop().count("variablesResolved", evaluator.getResolvedVariables())
+                    .count("fusedWalks", passes.getFusedWalks());
+            if (folder != null) {
+                stageMetrics.count("foldedOperations", folder.getFoldedOperations())
+                        .count("propagatedConstants", folder.getPropagatedConstants())
+                        .count("prunedBranches", folder.getPrunedBranches())
+                        .count("flattenedOperations", flattener.getFlattenedOperations());
+            }
+            if (optimizer != null) {
+                stageMetrics.count("removedDeclarations", optimizer.getRemovedDeclarations())
+                        .count("mergedRules", optimizer.getMergedRules());
+            }
+            passes.getPassNanos().forEach((pass, nanos) -> stageMetrics.count("pass." + pass + ".nanos", nanos));
+            finishStage(stageMetrics);
+        }
 
         transformed = errors.isEmpty();
     }
     public String generate() {
+        StageMetrics stageMetrics = collectMetrics ? StageMetrics.start("generate") : null;
+
+        GenerateEvent generateEvent = new GenerateEvent();
+        generateEvent.begin();
         Generator generator = new Generator();
-        return generator.generate(ast);
+        generator.setShortColors(shortColors);
+        generator.setExecutor(generateExecutor, generateHelpers);
+        String css = generator.generate(ast);
+        generateEvent.commit();
+
+        if (stageMetrics != null) {
+            metrics.add(stageMetrics.stop().count("outputChars", css.length()));
+        }
+        return css;
+    }
+
+    // Adds the AST counters (outside of the measured time) and stores the stage
+    private void finishStage(StageMetrics stageMetrics) {
+        ASTStatistics.of(ast == null ? null : ast.root).addTo(stageMetrics);
+        metrics.add(stageMetrics);
+    }
+
+    /**
+     * Runs all stages (parse, check, transform, generate) in one go, used when there is no GUI to click through them.
+     * @param input the ICSS source
+     * @return the generated CSS, or null when parsing or checking failed (see getErrors())
+     * @throws CancellationException when the thread got interrupted
+     */
+    public String compile(String input) {
+        parseString(input);
+        stopIfInterrupted("Compile");
+        if (!parsed || !check()) {
+            return null;
+        }
+        stopIfInterrupted("Compile");
+        transform(false);
+        stopIfInterrupted("Compile");
+        return generate();
+    }
+
+    private static void stopIfInterrupted(String stage) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException(stage + " was interrupted");
+        }
     }
 
     //Catch ANTLR errors
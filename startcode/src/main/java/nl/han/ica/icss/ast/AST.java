@@ -1,14 +1,17 @@
 package nl.han.ica.icss.ast;
 
+import nl.han.ica.datastructures.HANQueue;
+import nl.han.ica.icss.ast.types.PropertySchema;
 import nl.han.ica.icss.checker.SemanticError;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Objects;
 
 public class AST {
 	//The root of the tree
 	public Stylesheet root;
+	//The interned names (variables, selectors, properties) of this tree, starts with the known properties (same ids as the PropertySchema)
+	public SymbolTable symbols = PropertySchema.get().newSymbolTable();
 
 	public AST() {
 		root = new Stylesheet();
@@ -19,20 +22,39 @@ public class AST {
 	public void setRoot(Stylesheet stylesheet) {
 		root = stylesheet;
 	}
-    public ArrayList<SemanticError> getErrors() {
-	    ArrayList<SemanticError> errors = new ArrayList<>();
-        collectErrors(errors,root);
-        return errors;
-    }
-    private void collectErrors(ArrayList<SemanticError> errors, ASTNode node) {
-	    if(node.hasError()) {
-	        errors.add(node.getError());
-        }
-        for(ASTNode child: node.getChildren()) {
-	        collectErrors(errors,child);
-        }
-    }
+	// NOTE: Both walk the tree breadth-first with a queue as work-list (no recursion), so errors come out level by level:
+	// errors on a rule come before errors inside its if-clauses.
+	public ArrayList<SemanticError> getErrors() {
+		ArrayList<SemanticError> errors = new ArrayList<>();
+		for (ASTNode node : getNodesWithErrors()) {
+			errors.add(node.getError());
+		}
+		return errors;
+	}
+	// Same as getErrors, but returns the nodes themselves (e.g. so the GUI can point to where the error is)
+	public ArrayList<ASTNode> getNodesWithErrors() {
+		ArrayList<ASTNode> nodes = new ArrayList<>();
+		HANQueue<ASTNode> workList = new HANQueue<>();
+		workList.enqueue(root);
+
+		while (!workList.isEmpty()) {
+			ASTNode node = workList.dequeue();
+			if (node.hasError()) {
+				nodes.add(node);
+			}
+			for (ASTNode child : node.getChildren()) {
+				workList.enqueue(child);
+			}
+		}
+		return nodes;
+	}
 
+	// Deep copy of the tree, shares the symbol table (symbols are never removed, so that's safe)
+	public AST copy() {
+		AST copy = new AST(root == null ? null : (Stylesheet) root.copy());
+		copy.symbols = symbols;
+		return copy;
+	}
 
 	@Override
 	public String toString() {
@@ -1,14 +1,21 @@
 package nl.han.ica.icss.ast;
 
+import nl.han.ica.datastructures.HANStack;
 import nl.han.ica.icss.checker.SemanticError;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
-public class ASTNode {
+public abstract class ASTNode {
 
     private SemanticError error = null;
 
+    // Cached structural hash of this subtree (see structuralHash), NO_HASH when it's not computed (or invalidated)
+    private int structuralHash = NO_HASH;
+    // Node whose hash was last computed with this node as its child, invalidateHash goes up through these
+    private ASTNode parent;
+
     /*
      This method is used in the GUI to create an appropriate label
      in the tree visualisation.
@@ -37,6 +44,28 @@ public class ASTNode {
     public ASTNode removeChild(ASTNode child) {
         return this;
     }
+    /*
+    * Replaces (direct) children in one go, a child mapped to null is removed. The map compares nodes by identity
+    * (IdentityHashMap), so only the exact child instances are replaced. Used by the transform passes (see PassManager).
+    */
+    public ASTNode replaceChildren(Map<ASTNode, ASTNode> replacements) {
+        return this;
+    }
+
+    // Helpers for replaceChildren: a list is rebuilt in one pass (in order), a single child is swapped (or set to null)
+    protected static <T extends ASTNode> ArrayList<T> replaceIn(ArrayList<T> nodes, Map<ASTNode, ASTNode> replacements, Class<T> type) {
+        ArrayList<T> result = new ArrayList<>(nodes.size());
+        for (T node : nodes) {
+            ASTNode replacement = replacements.containsKey(node) ? replacements.get(node) : node;
+            if (replacement != null) {
+                result.add(type.cast(replacement));
+            }
+        }
+        return result;
+    }
+    protected static <T extends ASTNode> T replaceIn(T node, Map<ASTNode, ASTNode> replacements, Class<T> type) {
+        return replacements.containsKey(node) ? type.cast(replacements.get(node)) : node;
+    }
 
     public SemanticError getError() {
         return this.error;
@@ -50,36 +79,201 @@ public class ASTNode {
         return error != null;
     }
 
+	/*
+	 Hash of the values of this node itself, has to agree with shallowEquals (nodes that are shallowEquals have the same
+	 shallowHash). Override it together with shallowEquals.
+	 */
+	protected int shallowHash() {
+		return 0;
+	}
+
+	/*
+	 Compares the values of this node itself (e.g. the value of a literal), not its children, equals walks those.
+	 Override this in nodes that hold values which are not children. 'other' always has the same class as this.
+	 */
+	protected boolean shallowEquals(ASTNode other) {
+		return true;
+	}
+
+	// NOTE: toString and equals use an explicit stack instead of recursion, so very deep trees (e.g. generated sheets
+	// with thousands of nested if-clauses) don't overflow the call stack.
+
 	@Override
 	public String toString() {
-		StringBuilder result = new StringBuilder();
-		toString(result);
-		return result.toString();
+		StringBuilder builder = new StringBuilder();
+		HANStack<ASTNode> stack = new HANStack<>();
+		stack.push(this);
+
+		while (!stack.isEmpty()) {
+			ASTNode node = stack.pop();
+			if (node == END_OF_CHILDREN) {
+				builder.append("]");
+				continue;
+			}
+
+			builder.append("[");
+			builder.append(node.getNodeLabel());
+			builder.append("|");
+
+			// Closing bracket goes under the children, children are pushed in reverse so the first one comes out first
+			stack.push(END_OF_CHILDREN);
+			List<ASTNode> children = node.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				stack.push(children.get(i));
+			}
+		}
+		return builder.toString();
 	}
-	private void toString(StringBuilder builder) {
-		builder.append("[");
-		builder.append(getNodeLabel());	
-		builder.append("|");
-		for(ASTNode child : getChildren()) {
-			child.toString(builder);
-		}	
-		builder.append("]");
+
+	/*
+	 Merkle-style hash of this subtree: the class and values (shallowHash) of this node, combined with the structural hashes
+	 of its children in order. Structurally equal subtrees (see equals) have the same hash, so it can also be used as a key
+	 to memoize something per subtree, or to diff two versions of a tree (e.g. ASTTreeItem).
+
+	 The hash is cached per node, so it's computed once (O(subtree)) and after that it's O(1), until the subtree changes.
+	 Computing it (again) only visits the nodes that don't have a cached hash.
+
+	 NOTE: addChild, removeChild and replaceChildren invalidate the hash, and with that the hashes up the parent chain.
+	 Code that changes the fields of a node directly (e.g. 'declaration.expression = ...') has to call invalidateHash itself.
+	 */
+	public final int structuralHash() {
+		if (structuralHash != NO_HASH) return structuralHash;
+
+		// Post-order: a node is done (hashed) after all its children, children that are cached already aren't visited
+		HANStack<ASTNode> stack = new HANStack<>();
+		stack.push(this);
+
+		while (!stack.isEmpty()) {
+			ASTNode node = stack.peek();
+			List<ASTNode> children = node.getChildren();
+
+			boolean childrenDone = true;
+			for (int i = children.size() - 1; i >= 0; i--) {
+				ASTNode child = children.get(i);
+				if (child != null && child.structuralHash == NO_HASH) {
+					stack.push(child);
+					childrenDone = false;
+				}
+			}
+			if (!childrenDone) continue;
+
+			stack.pop();
+			if (node.structuralHash != NO_HASH) continue; // Was on the stack twice (shared by two parents)
+
+			int hash = 31 * node.getClass().getName().hashCode() + node.shallowHash(); // Name: same hash in every run
+			for (ASTNode child : children) {
+				if (child == null) {
+					hash = 31 * hash;
+				} else {
+					hash = 31 * hash + child.structuralHash;
+					child.parent = node;
+				}
+			}
+			node.structuralHash = hash == NO_HASH ? 1 : hash;
+		}
+		return structuralHash;
+	}
+
+	/*
+	 Drops the cached hash of this node and of the nodes above it. Stops at the first node that has no cached hash:
+	 a node above it can't have one either (hashing a node hashes all nodes below it), so this is cheap when nothing is cached.
+	 */
+	public void invalidateHash() {
+		for (ASTNode node = this; node != null && node.structuralHash != NO_HASH; node = node.parent) {
+			node.structuralHash = NO_HASH;
+		}
 	}
 
 	@Override
-    public boolean equals(Object o) {
-        if(! (o instanceof ASTNode))
-            return false;
-        //Compare all children
-        List<ASTNode> thisChildren = this.getChildren();
-        List<ASTNode> otherChildren = ((ASTNode) o).getChildren();
-        if(otherChildren.size() != thisChildren.size())
-            return false;
-        for(int i = 0; i < thisChildren.size(); i++ ) {
-            if(!thisChildren.get(i).equals(otherChildren.get(i))) {
-                return false;
-            }
-        }
-        return true;
-    }
+	public int hashCode() {
+		return structuralHash();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof ASTNode)) return false;
+
+		// Different hashes can't be equal trees. Once hashed, every pair of nodes below is checked in O(1) as well.
+		if (structuralHash() != ((ASTNode) o).structuralHash()) return false;
+
+		// Pairs of nodes that still have to be compared
+		HANStack<ASTNode> stack = new HANStack<>();
+		stack.push(this);
+		stack.push((ASTNode) o);
+
+		while (!stack.isEmpty()) {
+			ASTNode other = stack.pop();
+			ASTNode node = stack.pop();
+
+			if (node == other) continue;
+			if (node == null || other == null || node.getClass() != other.getClass() || !node.shallowEquals(other))
+				return false;
+			if (node.structuralHash != other.structuralHash) // Both cached, see above
+				return false;
+
+			//Compare all children
+			List<ASTNode> thisChildren = node.getChildren();
+			List<ASTNode> otherChildren = other.getChildren();
+			if (otherChildren.size() != thisChildren.size())
+				return false;
+			for (int i = 0; i < thisChildren.size(); i++) {
+				stack.push(thisChildren.get(i));
+				stack.push(otherChildren.get(i));
+			}
+		}
+		return true;
+	}
+
+	/*
+	 A new node with the same values as this one (e.g. the value of a literal), but without children.
+	 Every node class implements this, copy() uses it to copy whole trees.
+	 */
+	protected abstract ASTNode shallowCopy();
+
+	// Deep copy of this node and everything below it (errors included, e.g. for a snapshot in the GUI), walks the tree with an explicit stack as well
+	public ASTNode copy() {
+		ASTNode copy = copyOf(this);
+
+		// Pairs of (original, copy) of which the children still have to be copied
+		HANStack<ASTNode> stack = new HANStack<>();
+		stack.push(this);
+		stack.push(copy);
+
+		while (!stack.isEmpty()) {
+			ASTNode nodeCopy = stack.pop();
+			ASTNode node = stack.pop();
+
+			// NOTE: addChild puts every child in the right place, as long as they're added in the order of getChildren
+			for (ASTNode child : node.getChildren()) {
+				if (child == null) continue;
+
+				ASTNode childCopy = copyOf(child);
+				nodeCopy.addChild(childCopy);
+				stack.push(child);
+				stack.push(childCopy);
+			}
+		}
+		return copy;
+	}
+
+	// Shallow copy that keeps the error and the type the Checker gave an expression, so a copy of a checked tree is still checked
+	private static ASTNode copyOf(ASTNode node) {
+		ASTNode copy = node.shallowCopy();
+		copy.error = node.error;
+		if (node instanceof Expression) {
+			((Expression) copy).setType(((Expression) node).getType());
+		}
+		return copy;
+	}
+
+	// Marker for toString, pushed below the children of a node
+	private static final ASTNode END_OF_CHILDREN = new ASTNode() {
+		@Override
+		protected ASTNode shallowCopy() {
+			return this; // Never part of a tree
+		}
+	};
+
+	private static final int NO_HASH = 0;
 }
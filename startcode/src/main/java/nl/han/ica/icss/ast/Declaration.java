@@ -1,7 +1,7 @@
 package nl.han.ica.icss.ast;
 
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Map;
 
 /*
  * A Declaration defines a style property. Declarations are things like "width: 100px"
@@ -22,6 +22,11 @@ public class Declaration extends ASTNode {
 	    return "Declaration";
 	}
 
+	@Override
+	protected ASTNode shallowCopy() {
+		return new Declaration();
+	}
+
 	@Override
 	public ArrayList<ASTNode> getChildren() {
 
@@ -39,20 +44,15 @@ public class Declaration extends ASTNode {
 		} else if(child instanceof Expression) {
 			expression = (Expression) child;
 		}
+		invalidateHash();
 		return this;
 	}
 
 	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
-		if (!super.equals(o)) return false;
-		Declaration that = (Declaration) o;
-		return Objects.equals(property, that.property) &&
-				Objects.equals(expression, that.expression);
-	}
-	@Override
-	public int hashCode() {
-		return Objects.hash(property, expression);
+	public ASTNode replaceChildren(Map<ASTNode, ASTNode> replacements) {
+		property = replaceIn(property, replacements, PropertyName.class);
+		expression = replaceIn(expression, replacements, Expression.class);
+		invalidateHash();
+		return this;
 	}
 }
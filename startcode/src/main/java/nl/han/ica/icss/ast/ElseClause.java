@@ -1,7 +1,7 @@
 package nl.han.ica.icss.ast;
 
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Map;
 
 public class ElseClause extends ASTNode{
 
@@ -18,6 +18,11 @@ public class ElseClause extends ASTNode{
     public String getNodeLabel() {
         return "Else_Clause";
     }
+
+    @Override
+    protected ASTNode shallowCopy() {
+        return new ElseClause();
+    }
     @Override
     public ArrayList<ASTNode> getChildren() {
         ArrayList<ASTNode> children = new ArrayList<>();
@@ -31,20 +36,14 @@ public class ElseClause extends ASTNode{
 
         body.add(child);
 
+        invalidateHash();
         return this;
     }
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-        ElseClause ElseClause = (ElseClause) o;
-        return Objects.equals(body, ElseClause.body);
-    }
-
-    @Override
-    public int hashCode() {
-        return Objects.hash(body);
+    public ASTNode replaceChildren(Map<ASTNode, ASTNode> replacements) {
+        body = replaceIn(body, replacements, ASTNode.class);
+        invalidateHash();
+        return this;
     }
 
 
@@ -1,3 +1,21 @@
 package nl.han.ica.icss.ast;
 
-public abstract class Expression extends ASTNode { }
+import nl.han.ica.icss.ast.types.ExpressionType;
+
+public abstract class Expression extends ASTNode {
+
+    // Type of the value, worked out once (bottom-up) by the Checker, null when the expression isn't checked (yet)
+    private ExpressionType type;
+
+    /**
+     * @return the type of the value of this expression: fixed for a literal, set by the Checker for variable references
+     * and operations (UNDEFINED when it has no valid type), null when it wasn't checked
+     */
+    public ExpressionType getType() {
+        return type;
+    }
+
+    public void setType(ExpressionType type) {
+        this.type = type;
+    }
+}
@@ -1,7 +1,7 @@
 package nl.han.ica.icss.ast;
 
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Map;
 
 public class IfClause extends ASTNode {
 
@@ -28,6 +28,11 @@ public class IfClause extends ASTNode {
     public String getNodeLabel() {
         return "If_Clause";
     }
+
+    @Override
+    protected ASTNode shallowCopy() {
+        return new IfClause();
+    }
     @Override
     public ArrayList<ASTNode> getChildren() {
         ArrayList<ASTNode> children = new ArrayList<>();
@@ -48,6 +53,7 @@ public class IfClause extends ASTNode {
         else
             body.add(child);
 
+        invalidateHash();
         return this;
     }
 
@@ -61,29 +67,17 @@ public class IfClause extends ASTNode {
         } else {
             body.remove(child);
         }
+        invalidateHash();
         return this;
     }
 
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-        IfClause ifClause = (IfClause) o;
-        if (this.elseClause == null)
-            return Objects.equals(conditionalExpression, ifClause.getConditionalExpression()) &&
-                Objects.equals(body, ifClause.body);
-        else
-            return Objects.equals(conditionalExpression, ifClause.getConditionalExpression()) &&
-                    Objects.equals(body, ifClause.body) &&
-                    Objects.equals(elseClause, ifClause.elseClause);
-
-    }
-
     @Override
-    public int hashCode() {
-        return Objects.hash(conditionalExpression, body, elseClause);
+    public ASTNode replaceChildren(Map<ASTNode, ASTNode> replacements) {
+        conditionalExpression = replaceIn(conditionalExpression, replacements, Expression.class);
+        body = replaceIn(body, replacements, ASTNode.class);
+        elseClause = replaceIn(elseClause, replacements, ElseClause.class);
+        invalidateHash();
+        return this;
     }
 
     public Expression getConditionalExpression() {
@@ -1,4 +1,5 @@
 package nl.han.ica.icss.ast;
 
+// NOTE: Every literal class overrides getType() with its own (fixed) type, so literals never need typing by the Checker.
 public abstract class Literal extends Expression {
 }
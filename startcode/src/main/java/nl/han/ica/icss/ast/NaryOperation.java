@@ -0,0 +1,55 @@
+package nl.han.ica.icss.ast;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/*
+ An operation over any amount of operands, made from a chain of binary operations with the same precedence
+ (e.g. 'A + B - C + D', which the parser builds as ((A + B) - C) + D). The operands are in source order.
+ Only made by transforms (see OperationFlattener), so the Evaluator can work a long chain out in one loop.
+ */
+public abstract class NaryOperation extends Expression {
+
+    public final Expression[] operands;
+    private int next = 0; // First slot addChild could fill
+
+    protected NaryOperation(Expression[] operands) {
+        this.operands = operands;
+    }
+
+    public int size() {
+        return operands.length;
+    }
+
+    @Override
+    public ArrayList<ASTNode> getChildren() {
+        ArrayList<ASTNode> children = new ArrayList<>(operands.length);
+        for (Expression operand : operands) {
+            if (operand != null)
+                children.add(operand);
+        }
+        return children;
+    }
+
+    // NOTE: Fills the first empty slot, the amount of operands is fixed when the node is made (see shallowCopy)
+    @Override
+    public ASTNode addChild(ASTNode child) {
+        while (next < operands.length && operands[next] != null) {
+            next++;
+        }
+        if (next < operands.length) {
+            operands[next] = (Expression) child;
+        }
+        invalidateHash();
+        return this;
+    }
+
+    @Override
+    public ASTNode replaceChildren(Map<ASTNode, ASTNode> replacements) {
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = replaceIn(operands[i], replacements, Expression.class);
+        }
+        invalidateHash();
+        return this;
+    }
+}
@@ -1,6 +1,7 @@
     package nl.han.ica.icss.ast;
 
     import java.util.ArrayList;
+    import java.util.Map;
 
     public abstract class Operation extends Expression {
 
@@ -24,6 +25,15 @@
             } else if(rhs == null) {
                 rhs = (Expression) child;
             }
+            invalidateHash();
+            return this;
+        }
+
+        @Override
+        public ASTNode replaceChildren(Map<ASTNode, ASTNode> replacements) {
+            lhs = replaceIn(lhs, replacements, Expression.class);
+            rhs = replaceIn(rhs, replacements, Expression.class);
+            invalidateHash();
             return this;
         }
     }
@@ -1,8 +1,12 @@
 package nl.han.ica.icss.ast;
 
+import java.util.Objects;
+
 public class PropertyName extends ASTNode {
 
     public String name;
+    // Id of the name in the SymbolTable of the AST (NO_SYMBOL when it wasn't interned)
+    public int symbol = SymbolTable.NO_SYMBOL;
 
     public PropertyName() {
         super();
@@ -12,9 +16,28 @@ public class PropertyName extends ASTNode {
         super();
         this.name = name;
     }
+    public PropertyName(String name, int symbol) {
+        this(name);
+        this.symbol = symbol;
+    }
 
     @Override
     public String getNodeLabel() {
         return "Property: (" + name + ")";
     }
+
+    @Override
+    protected ASTNode shallowCopy() {
+        return new PropertyName(name, symbol);
+    }
+
+    @Override
+    protected boolean shallowEquals(ASTNode other) {
+        return Objects.equals(name, ((PropertyName) other).name);
+    }
+
+    @Override
+    protected int shallowHash() {
+        return Objects.hashCode(name);
+    }
 }
@@ -1,7 +1,7 @@
 package nl.han.ica.icss.ast;
 
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Map;
 
 public class Stylerule extends ASTNode {
 	
@@ -21,6 +21,11 @@ public class Stylerule extends ASTNode {
 	public String getNodeLabel() {
 		return "Stylerule";
 	}
+
+	@Override
+	protected ASTNode shallowCopy() {
+		return new Stylerule();
+	}
 	@Override
 	public ArrayList<ASTNode> getChildren() {
 		ArrayList<ASTNode> children = new ArrayList<>();
@@ -37,6 +42,7 @@ public class Stylerule extends ASTNode {
 		else
         	body.add(child);
 
+		invalidateHash();
 		return this;
     }
 
@@ -48,21 +54,15 @@ public class Stylerule extends ASTNode {
 		} else {
 			body.remove(child);
 		}
+		invalidateHash();
 		return this;
 	}
 
 	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
-		if (!super.equals(o)) return false;
-		Stylerule stylerule = (Stylerule) o;
-		return Objects.equals(selectors, stylerule.selectors) &&
-				Objects.equals(body, stylerule.body);
-	}
-
-	@Override
-	public int hashCode() {
-		return Objects.hash(selectors, body);
+	public ASTNode replaceChildren(Map<ASTNode, ASTNode> replacements) {
+		selectors = replaceIn(selectors, replacements, Selector.class);
+		body = replaceIn(body, replacements, ASTNode.class);
+		invalidateHash();
+		return this;
 	}
 }
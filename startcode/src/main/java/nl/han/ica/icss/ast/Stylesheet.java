@@ -3,7 +3,7 @@ package nl.han.ica.icss.ast;
 import nl.han.ica.icss.checker.SemanticError;
 
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Map;
 
 /**
  * A stylesheet is the root node of the AST, it consists of one or more statements
@@ -24,6 +24,11 @@ public class Stylesheet extends ASTNode {
 	public String getNodeLabel() {
 		return "Stylesheet";
 	}
+
+	@Override
+	protected ASTNode shallowCopy() {
+		return new Stylesheet();
+	}
 	@Override
 	public ArrayList<ASTNode> getChildren() {
 		return this.body;
@@ -31,26 +36,20 @@ public class Stylesheet extends ASTNode {
 	@Override
 	public ASTNode addChild(ASTNode child) {
 	    	body.add(child);
+	    	invalidateHash();
 	    	return this;
 	}
 	@Override
 	public ASTNode removeChild(ASTNode child) {
 		body.remove(child);
+		invalidateHash();
 		return this;
 	}
 
 	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
-		if (!super.equals(o)) return false;
-		Stylesheet that = (Stylesheet) o;
-		return Objects.equals(body, that.body);
-	}
-
-	@Override
-	public int hashCode() {
-
-		return Objects.hash(body);
+	public ASTNode replaceChildren(Map<ASTNode, ASTNode> replacements) {
+		body = replaceIn(body, replacements, ASTNode.class);
+		invalidateHash();
+		return this;
 	}
 }
@@ -0,0 +1,188 @@
+package nl.han.ica.icss.ast;
+
+import java.util.Arrays;
+
+/**
+ * Interns the identifiers (variable names, selectors and property names) of one compile into dense int ids (0, 1, 2...).
+ *
+ * Large sheets repeat a few hundred names over and over, so the ASTListener interns straight from the token's
+ * character interval in the source: a name only becomes a String the first time it's seen, every other occurrence
+ * shares that String and id. The checker keys its scopes on the ids, so there's no String hashing/comparing there.
+ *
+ * NOTE: Not thread-safe, a table belongs to a single AST (one compile).
+ */
+public class SymbolTable {
+
+    public static final int NO_SYMBOL = -1;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // id -> name / hash
+    private String[] names = new String[DEFAULT_CAPACITY];
+    private int[] hashes = new int[DEFAULT_CAPACITY];
+    private int size;
+
+    // Open addressing (linear probing), holds id + 1 so 0 means empty
+    private int[] table = new int[DEFAULT_CAPACITY * 2];
+
+    public SymbolTable() {
+    }
+
+    /**
+     * Starts with the same names (and ids) as the given table, e.g. the property names of the PropertySchema.
+     * @param prototype table to copy
+     */
+    public SymbolTable(SymbolTable prototype) {
+        names = prototype.names.clone();
+        hashes = prototype.hashes.clone();
+        table = prototype.table.clone();
+        size = prototype.size;
+    }
+
+    /**
+     * Interns the characters [start, end) of source, without creating a String when the name is known already.
+     * @param source text the identifier is in (e.g. the whole ICSS input)
+     * @param start index of the first character
+     * @param end index after the last character
+     * @return the id of the name
+     */
+    public int intern(CharSequence source, int start, int end) {
+        int hash = hash(source, start, end);
+        int index = indexOf(source, start, end, hash);
+
+        if (table[index] == 0) {
+            return add(source.subSequence(start, end).toString(), hash, index);
+        }
+        return table[index] - 1;
+    }
+
+    /**
+     * Looks up the characters [start, end) of source, never adds anything (or creates a String).
+     * @return the id of the name, NO_SYMBOL when it's not in the table
+     */
+    public int lookup(CharSequence source, int start, int end) {
+        int index = indexOf(source, start, end, hash(source, start, end));
+        return table[index] - 1; // Empty slot (0) ends up as NO_SYMBOL
+    }
+
+    /**
+     * Interns a name that's already a String (e.g. for nodes that weren't made by the parser).
+     * @param name the name
+     * @return the id of the name
+     */
+    public int intern(String name) {
+        int hash = name.hashCode();
+
+        int mask = table.length - 1;
+        for (int index = hash & mask; ; index = (index + 1) & mask) {
+            int entry = table[index];
+            if (entry == 0) {
+                return add(name, hash, index);
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Id of the name of a variable reference. A reference that wasn't made by the parser (e.g. built by hand in a test)
+     * gets its name interned here, so the checker can always work with ids.
+     * @param reference the reference
+     * @return id of its name, NO_SYMBOL when it has no name
+     */
+    public int symbolOf(VariableReference reference) {
+        if (reference.symbol == NO_SYMBOL && reference.name != null) {
+            reference.symbol = intern(reference.name);
+        }
+        return reference.symbol;
+    }
+
+    // Same as symbolOf(VariableReference), for property names (their id is also their id in the PropertySchema)
+    public int symbolOf(PropertyName property) {
+        if (property.symbol == NO_SYMBOL && property.name != null) {
+            property.symbol = intern(property.name);
+        }
+        return property.symbol;
+    }
+
+    /**
+     * @param id id returned by intern
+     * @return the (shared) String of the name
+     */
+    public String getName(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("Unknown symbol: " + id);
+
+        return names[id];
+    }
+
+    // Amount of different names
+    public int getSize() {
+        return size;
+    }
+
+    private int add(String name, int hash, int index) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        int id = size++;
+        names[id] = name;
+        hashes[id] = hash;
+        table[index] = id + 1;
+
+        // Keep the load factor at or below 0.5
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+
+        for (int id = 0; id < size; id++) {
+            int index = hashes[id] & mask;
+            while (table[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            table[index] = id + 1;
+        }
+    }
+
+    // Slot that holds the name, or the empty slot where it would go
+    private int indexOf(CharSequence source, int start, int end, int hash) {
+        int mask = table.length - 1;
+        int index = hash & mask;
+        while (table[index] != 0) {
+            int id = table[index] - 1;
+            if (hashes[id] == hash && matches(names[id], source, start, end)) {
+                break;
+            }
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    // Same hash as String.hashCode(), so both intern methods agree
+    private static int hash(CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash;
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start) return false;
+
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
@@ -1,7 +1,7 @@
 package nl.han.ica.icss.ast;
 
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Map;
 
 /**
  * An assignment binds a expression to an identifier.
@@ -17,6 +17,11 @@ public class VariableAssignment extends ASTNode {
 		return "VariableAssignment (" + name.name + ")";
 	}
 
+	@Override
+	protected ASTNode shallowCopy() {
+		return new VariableAssignment();
+	}
+
 	@Override
 	public ASTNode addChild(ASTNode child) {
 		if(name == null) {
@@ -25,6 +30,7 @@ public class VariableAssignment extends ASTNode {
 			expression = (Expression) child;
 		}
 
+		invalidateHash();
 		return this;
 	}
 
@@ -40,17 +46,10 @@ public class VariableAssignment extends ASTNode {
 	}
 
 	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
-		if (!super.equals(o)) return false;
-		VariableAssignment that = (VariableAssignment) o;
-		return Objects.equals(name, that.name) &&
-				Objects.equals(expression, that.expression);
-	}
-
-	@Override
-	public int hashCode() {
-		return Objects.hash(name, expression);
+	public ASTNode replaceChildren(Map<ASTNode, ASTNode> replacements) {
+		name = replaceIn(name, replacements, VariableReference.class);
+		expression = replaceIn(expression, replacements, Expression.class);
+		invalidateHash();
+		return this;
 	}
 }
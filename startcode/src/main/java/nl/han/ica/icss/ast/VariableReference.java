@@ -5,11 +5,23 @@ import java.util.Objects;
 public class VariableReference extends Expression {
 
 	public String name;
+	// Id of the name in the SymbolTable of the AST (NO_SYMBOL when it wasn't interned, e.g. a node made by hand)
+	public int symbol = SymbolTable.NO_SYMBOL;
+
+	// Where the variable lives, filled in by the Resolver (checker): the depth of the scope it's defined in (0 = global)
+	// and its slot in that scope. UNRESOLVED when the Resolver hasn't run or the variable isn't defined.
+	public static final int UNRESOLVED = -1;
+	public int scopeDepth = UNRESOLVED;
+	public int slot = UNRESOLVED;
 	
 	public VariableReference(String name) {
 		super();
 		this.name = name;
 	}
+	public VariableReference(String name, int symbol) {
+		this(name);
+		this.symbol = symbol;
+	}
 
 	@Override
 	public String getNodeLabel() {
@@ -17,17 +29,25 @@ public class VariableReference extends Expression {
 	}
 
 	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
-		if (!super.equals(o)) return false;
-		VariableReference that = (VariableReference) o;
-		return Objects.equals(name, that.name);
+	protected ASTNode shallowCopy() {
+		VariableReference copy = new VariableReference(name, symbol);
+		copy.scopeDepth = scopeDepth;
+		copy.slot = slot;
+		return copy;
+	}
+
+	public boolean isResolved() {
+		return scopeDepth != UNRESOLVED;
+	}
+
+	@Override
+	protected boolean shallowEquals(ASTNode other) {
+		return Objects.equals(name, ((VariableReference) other).name);
 	}
 
 	@Override
-	public int hashCode() {
+	protected int shallowHash() {
 
-		return Objects.hash(name);
+		return Objects.hashCode(name);
 	}
 }
@@ -1,7 +1,8 @@
 package nl.han.ica.icss.ast.literals;
 
+import nl.han.ica.icss.ast.ASTNode;
 import nl.han.ica.icss.ast.Literal;
-import java.util.Objects;
+import nl.han.ica.icss.ast.types.ExpressionType;
 
 public class BoolLiteral extends Literal {
     public boolean value;
@@ -13,22 +14,27 @@ public class BoolLiteral extends Literal {
         this.value = text.equals("TRUE");
     }
     @Override
+    public ExpressionType getType() {
+        return ExpressionType.BOOL;
+    }
+    @Override
     public String getNodeLabel() {
         String textValue = value ? "TRUE" : "FALSE";
         return "Bool Literal (" + textValue + ")";
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-        BoolLiteral that = (BoolLiteral) o;
-        return value == that.value;
+    protected ASTNode shallowCopy() {
+        return new BoolLiteral(value);
+    }
+
+    @Override
+    protected boolean shallowEquals(ASTNode other) {
+        return value == ((BoolLiteral) other).value;
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(value);
+    protected int shallowHash() {
+        return Boolean.hashCode(value);
     }
 }
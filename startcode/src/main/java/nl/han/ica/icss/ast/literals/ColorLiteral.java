@@ -1,31 +1,71 @@
 package nl.han.ica.icss.ast.literals;
 
+import nl.han.ica.icss.ast.ASTNode;
 import nl.han.ica.icss.ast.Literal;
-
-import java.util.Objects;
+import nl.han.ica.icss.ast.types.ExpressionType;
 
 public class ColorLiteral extends Literal {
-    public String value;
+    // Packed 0xRRGGBB, parsed once from the '#rrggbb' in the source (the Generator formats it back)
+    public int value;
+
+    public ColorLiteral(int value) {
+        this.value = value & 0xFFFFFF;
+    }
+    public ColorLiteral(String text) {
+        this.value = parse(text, 0, text.length());
+        if (this.value < 0) {
+            throw new IllegalArgumentException("Not a color: '" + text + "', expected '#rrggbb'");
+        }
+    }
 
-    public ColorLiteral(String value) {
-        this.value = value;
+    /**
+     * Parses '#rrggbb' from the characters [start, end) of text, without creating a String.
+     * @return the packed 0xRRGGBB value, or -1 when it isn't a color
+     */
+    public static int parse(CharSequence text, int start, int end) {
+        if (end - start != 7 || text.charAt(start) != '#') return -1;
+
+        int rgb = 0;
+        for (int i = start + 1; i < end; i++) {
+            int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) return -1;
+            rgb = (rgb << 4) | digit;
+        }
+        return rgb;
+    }
+
+    public int getRed() {
+        return (value >> 16) & 0xFF;
+    }
+    public int getGreen() {
+        return (value >> 8) & 0xFF;
+    }
+    public int getBlue() {
+        return value & 0xFF;
+    }
+
+    @Override
+    public ExpressionType getType() {
+        return ExpressionType.COLOR;
     }
     @Override
     public String getNodeLabel() {
-        return "Color literal (" + value + ")";
+        return "Color literal (" + String.format("#%06x", value) + ")";
+    }
+
+    @Override
+    protected ASTNode shallowCopy() {
+        return new ColorLiteral(value);
     }
 
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        ColorLiteral that = (ColorLiteral) o;
-        return Objects.equals(value, that.value);
+    protected boolean shallowEquals(ASTNode other) {
+        return value == ((ColorLiteral) other).value;
     }
     @Override
-    public int hashCode() {
+    protected int shallowHash() {
 
-        return Objects.hash(value);
+        return Integer.hashCode(value);
     }
 }
@@ -1,8 +1,8 @@
 package nl.han.ica.icss.ast.literals;
 
+import nl.han.ica.icss.ast.ASTNode;
 import nl.han.ica.icss.ast.Literal;
-
-import java.util.Objects;
+import nl.han.ica.icss.ast.types.ExpressionType;
 
 public class PercentageLiteral extends Literal {
     public int value;
@@ -11,7 +11,11 @@ public class PercentageLiteral extends Literal {
         this.value = value;
     }
     public PercentageLiteral(String text) {
-        this.value = Integer.parseInt(text.substring(0, text.length() - 1));
+        this.value = Integer.parseInt(text, 0, text.length() - 1, 10);
+    }
+    @Override
+    public ExpressionType getType() {
+        return ExpressionType.PERCENTAGE;
     }
     @Override
     public String getNodeLabel() {
@@ -19,16 +23,17 @@ public class PercentageLiteral extends Literal {
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-        PercentageLiteral that = (PercentageLiteral) o;
-        return value == that.value;
+    protected ASTNode shallowCopy() {
+        return new PercentageLiteral(value);
+    }
+
+    @Override
+    protected boolean shallowEquals(ASTNode other) {
+        return value == ((PercentageLiteral) other).value;
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(value);
+    protected int shallowHash() {
+        return Integer.hashCode(value);
     }
 }
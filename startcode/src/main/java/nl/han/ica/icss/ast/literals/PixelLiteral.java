@@ -1,8 +1,8 @@
 package nl.han.ica.icss.ast.literals;
 
+import nl.han.ica.icss.ast.ASTNode;
 import nl.han.ica.icss.ast.Literal;
-
-import java.util.Objects;
+import nl.han.ica.icss.ast.types.ExpressionType;
 
 public class PixelLiteral extends Literal {
     public int value;
@@ -11,7 +11,11 @@ public class PixelLiteral extends Literal {
         this.value = value;
     }
     public PixelLiteral(String text) {
-        this.value = Integer.parseInt(text.substring(0, text.length() - 2));
+        this.value = Integer.parseInt(text, 0, text.length() - 2, 10);
+    }
+    @Override
+    public ExpressionType getType() {
+        return ExpressionType.PIXEL;
     }
     @Override
     public String getNodeLabel() {
@@ -19,16 +23,17 @@ public class PixelLiteral extends Literal {
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-        PixelLiteral that = (PixelLiteral) o;
-        return value == that.value;
+    protected ASTNode shallowCopy() {
+        return new PixelLiteral(value);
+    }
+
+    @Override
+    protected boolean shallowEquals(ASTNode other) {
+        return value == ((PixelLiteral) other).value;
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(value);
+    protected int shallowHash() {
+        return Integer.hashCode(value);
     }
 }
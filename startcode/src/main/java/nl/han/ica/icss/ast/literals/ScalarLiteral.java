@@ -1,8 +1,8 @@
 package nl.han.ica.icss.ast.literals;
 
+import nl.han.ica.icss.ast.ASTNode;
 import nl.han.ica.icss.ast.Literal;
-
-import java.util.Objects;
+import nl.han.ica.icss.ast.types.ExpressionType;
 
 public class ScalarLiteral extends Literal {
     public int value;
@@ -14,21 +14,26 @@ public class ScalarLiteral extends Literal {
         this.value = Integer.parseInt(text);
     }
     @Override
+    public ExpressionType getType() {
+        return ExpressionType.SCALAR;
+    }
+    @Override
     public String getNodeLabel() {
         return "Scalar literal (" + value + ")";
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-        ScalarLiteral that = (ScalarLiteral) o;
-        return value == that.value;
+    protected ASTNode shallowCopy() {
+        return new ScalarLiteral(value);
+    }
+
+    @Override
+    protected boolean shallowEquals(ASTNode other) {
+        return value == ((ScalarLiteral) other).value;
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(value);
+    protected int shallowHash() {
+        return Integer.hashCode(value);
     }
 }
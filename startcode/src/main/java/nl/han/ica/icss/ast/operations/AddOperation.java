@@ -1,5 +1,6 @@
     package nl.han.ica.icss.ast.operations;
 
+    import nl.han.ica.icss.ast.ASTNode;
     import nl.han.ica.icss.ast.Operation;
 
     public class AddOperation extends Operation {
@@ -8,4 +9,9 @@
         public String getNodeLabel() {
             return "Add";
         }
+
+        @Override
+        protected ASTNode shallowCopy() {
+            return new AddOperation();
+        }
     }
@@ -0,0 +1,23 @@
+package nl.han.ica.icss.ast.operations;
+
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Expression;
+import nl.han.ica.icss.ast.NaryOperation;
+
+// A chain of *: operands[0] * operands[1] * ...
+public class ProductOperation extends NaryOperation {
+
+    public ProductOperation(Expression[] operands) {
+        super(operands);
+    }
+
+    @Override
+    public String getNodeLabel() {
+        return "Product";
+    }
+
+    @Override
+    protected ASTNode shallowCopy() {
+        return new ProductOperation(new Expression[operands.length]);
+    }
+}
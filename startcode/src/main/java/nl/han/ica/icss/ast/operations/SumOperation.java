@@ -0,0 +1,38 @@
+package nl.han.ica.icss.ast.operations;
+
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Expression;
+import nl.han.ica.icss.ast.NaryOperation;
+
+import java.util.Arrays;
+
+// A chain of + and -: operands[0] (+|-) operands[1] (+|-) ..., worked out left to right
+public class SumOperation extends NaryOperation {
+
+    // Per operand: true when it's subtracted (never for the first one)
+    public final boolean[] negated;
+
+    public SumOperation(Expression[] operands, boolean[] negated) {
+        super(operands);
+        this.negated = negated;
+    }
+
+    @Override
+    public String getNodeLabel() {
+        return "Sum";
+    }
+
+    @Override
+    protected ASTNode shallowCopy() {
+        return new SumOperation(new Expression[operands.length], negated.clone());
+    }
+
+    @Override
+    protected boolean shallowEquals(ASTNode other) {
+        return Arrays.equals(negated, ((SumOperation) other).negated);
+    }
+    @Override
+    protected int shallowHash() {
+        return Arrays.hashCode(negated);
+    }
+}
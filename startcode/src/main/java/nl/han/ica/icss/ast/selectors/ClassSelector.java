@@ -1,35 +1,46 @@
 package nl.han.ica.icss.ast.selectors;
 
+import nl.han.ica.icss.ast.ASTNode;
 import nl.han.ica.icss.ast.Selector;
+import nl.han.ica.icss.ast.SymbolTable;
 
 import java.util.Objects;
 
 public class ClassSelector extends Selector {
     public String cls;
+    // Id of the selector text in the SymbolTable of the AST (NO_SYMBOL when it wasn't interned)
+    public int symbol = SymbolTable.NO_SYMBOL;
 
     public ClassSelector(String cls) {
         this.cls = cls;
     }
 
+    public ClassSelector(String cls, int symbol) {
+        this(cls);
+        this.symbol = symbol;
+    }
+
     @Override
     public String getNodeLabel() {
         return "ClassSelector " + cls;
     }
 
+    @Override
+    protected ASTNode shallowCopy() {
+        return new ClassSelector(cls, symbol);
+    }
+
     public String toString() {
         return cls;
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        ClassSelector that = (ClassSelector) o;
-        return Objects.equals(cls, that.cls);
+    protected boolean shallowEquals(ASTNode other) {
+        return Objects.equals(cls, ((ClassSelector) other).cls);
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(cls);
+    protected int shallowHash() {
+        return Objects.hashCode(cls);
     }
 }
@@ -1,34 +1,44 @@
 package nl.han.ica.icss.ast.selectors;
 
+import nl.han.ica.icss.ast.ASTNode;
 import nl.han.ica.icss.ast.Selector;
+import nl.han.ica.icss.ast.SymbolTable;
 
 import java.util.Objects;
 
 public class IdSelector extends Selector {
     public String id;
+    // Id of the selector text in the SymbolTable of the AST (NO_SYMBOL when it wasn't interned)
+    public int symbol = SymbolTable.NO_SYMBOL;
 
     public IdSelector(String id) {
         this.id = id;
     }
 
+    public IdSelector(String id, int symbol) {
+        this(id);
+        this.symbol = symbol;
+    }
+
     public String getNodeLabel() {
         return "IdSelector " + id;
     }
+
+    @Override
+    protected ASTNode shallowCopy() {
+        return new IdSelector(id, symbol);
+    }
     public String toString() {
         return id;
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-        IdSelector that = (IdSelector) o;
-        return Objects.equals(id, that.id);
+    protected boolean shallowEquals(ASTNode other) {
+        return Objects.equals(id, ((IdSelector) other).id);
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(id);
+    protected int shallowHash() {
+        return Objects.hashCode(id);
     }
 }
@@ -1,35 +1,45 @@
 package nl.han.ica.icss.ast.selectors;
 
+import nl.han.ica.icss.ast.ASTNode;
 import nl.han.ica.icss.ast.Selector;
+import nl.han.ica.icss.ast.SymbolTable;
 
 import java.util.Objects;
 
 public class TagSelector extends Selector {
     public String tag;
+    // Id of the selector text in the SymbolTable of the AST (NO_SYMBOL when it wasn't interned)
+    public int symbol = SymbolTable.NO_SYMBOL;
 
     public TagSelector(String tag) {
         this.tag = tag;
     }
 
+    public TagSelector(String tag, int symbol) {
+        this(tag);
+        this.symbol = symbol;
+    }
+
     public String getNodeLabel() {
         return "TagSelector " + tag;
     }
+
+    @Override
+    protected ASTNode shallowCopy() {
+        return new TagSelector(tag, symbol);
+    }
     public String toString() {
         return tag;
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-        TagSelector that = (TagSelector) o;
-        return Objects.equals(tag, that.tag);
+    protected boolean shallowEquals(ASTNode other) {
+        return Objects.equals(tag, ((TagSelector) other).tag);
     }
 
     @Override
-    public int hashCode() {
+    protected int shallowHash() {
 
-        return Objects.hash(tag);
+        return Objects.hashCode(tag);
     }
 }
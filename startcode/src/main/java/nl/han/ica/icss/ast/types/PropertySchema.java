@@ -0,0 +1,157 @@
+package nl.han.ica.icss.ast.types;
+
+import nl.han.ica.icss.ast.SymbolTable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The CSS properties ICSS knows about and the types of values they accept, read once from 'property-schema.properties'.
+ *
+ * Every property gets an id (0, 1, 2...) in a SymbolTable. The symbol table of every AST starts as a copy of that table
+ * (see {@link #newSymbolTable()}), so the symbol of a PropertyName is also its id in here and the checker doesn't have to
+ * look anything up by name. The lexer uses {@link #lookup} to turn a LOWER_IDENT into a COLOR_PROPERTY or DIM_PROPERTY.
+ */
+public final class PropertySchema {
+
+    public static final String RESOURCE = "property-schema.properties";
+
+    // The only two kinds of declarations the grammar knows
+    private static final EnumSet<ExpressionType> COLOR_TYPES = EnumSet.of(ExpressionType.COLOR);
+    private static final EnumSet<ExpressionType> DIMENSION_TYPES = EnumSet.of(ExpressionType.PIXEL, ExpressionType.PERCENTAGE, ExpressionType.SCALAR);
+
+    private final SymbolTable names = new SymbolTable();
+    private final List<EnumSet<ExpressionType>> allowedTypes = new ArrayList<>(); // Indexed by id, contains() is a bit test
+
+    // NOTE: Loaded on first use (holder class idiom), the resource is bundled so failing to read it is a broken build.
+    private static final class Holder {
+        static final PropertySchema INSTANCE = load();
+    }
+
+    private PropertySchema() {
+    }
+
+    public static PropertySchema get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return a new (per compile) symbol table that already holds all property names, with the ids of this schema
+     */
+    public SymbolTable newSymbolTable() {
+        return new SymbolTable(names);
+    }
+
+    /**
+     * Looks up the characters [start, end) of source without creating a String.
+     * @return id of the property, SymbolTable.NO_SYMBOL when it's not a known property
+     */
+    public int lookup(CharSequence source, int start, int end) {
+        return names.lookup(source, start, end);
+    }
+
+    /**
+     * @param property id of the property (e.g. the symbol of a PropertyName)
+     * @return true when the property is a known property (and not just any other name in a symbol table)
+     */
+    public boolean isProperty(int property) {
+        return property >= 0 && property < allowedTypes.size();
+    }
+
+    public boolean isColorProperty(int property) {
+        return isProperty(property) && allowedTypes.get(property).contains(ExpressionType.COLOR);
+    }
+
+    /**
+     * @param property id of the property
+     * @param type type of the value
+     * @return true when the property accepts a value of that type (false for unknown properties)
+     */
+    public boolean isAllowed(int property, ExpressionType type) {
+        return isProperty(property) && allowedTypes.get(property).contains(type);
+    }
+
+    /**
+     * @param property id of the property
+     * @return the accepted types (unmodifiable), empty for unknown properties
+     */
+    public Set<ExpressionType> getAllowedTypes(int property) {
+        return isProperty(property) ? Collections.unmodifiableSet(allowedTypes.get(property)) : Collections.emptySet();
+    }
+
+    public String getName(int property) {
+        return names.getName(property);
+    }
+
+    // Amount of known properties
+    public int getSize() {
+        return allowedTypes.size();
+    }
+
+    private static PropertySchema load() {
+        try (InputStream in = PropertySchema.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing resource " + RESOURCE);
+            }
+
+            PropertySchema schema = new PropertySchema();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+            String line;
+            for (int lineNumber = 1; (line = reader.readLine()) != null; lineNumber++) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                schema.add(line, lineNumber);
+            }
+            return schema;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Parses one '<property> = <type>, <type>...' line
+    private void add(String line, int lineNumber) {
+        int separator = line.indexOf('=');
+        if (separator < 0) {
+            throw invalid(lineNumber, "expected '<property> = <type>, ...'");
+        }
+
+        String name = line.substring(0, separator).trim();
+        if (!name.matches("[a-z][a-z0-9\\-]*")) { // Has to lex as a LOWER_IDENT
+            throw invalid(lineNumber, "invalid property name '" + name + "'");
+        }
+        if (names.lookup(name, 0, name.length()) != SymbolTable.NO_SYMBOL) {
+            throw invalid(lineNumber, "duplicate property '" + name + "'");
+        }
+
+        EnumSet<ExpressionType> types = EnumSet.noneOf(ExpressionType.class);
+        for (String type : line.substring(separator + 1).split(",")) {
+            try {
+                types.add(ExpressionType.valueOf(type.trim()));
+            } catch (IllegalArgumentException e) {
+                throw invalid(lineNumber, "unknown type '" + type.trim() + "'");
+            }
+        }
+        if (!types.equals(COLOR_TYPES) && !DIMENSION_TYPES.containsAll(types)) {
+            throw invalid(lineNumber, "a property takes either COLOR or any of PIXEL, PERCENTAGE, SCALAR");
+        }
+
+        int id = names.intern(name);
+        assert id == allowedTypes.size();
+        allowedTypes.add(types);
+    }
+
+    private static IllegalStateException invalid(int lineNumber, String message) {
+        return new IllegalStateException(RESOURCE + ":" + lineNumber + ": " + message);
+    }
+}
@@ -1,13 +1,19 @@
 package nl.han.ica.icss.checker;
 
+import nl.han.ica.datastructures.HANIntMap;
 import nl.han.ica.datastructures.HANLinkedList;
+import nl.han.ica.datastructures.HANStack;
 import nl.han.ica.datastructures.IHANLinkedList;
 import nl.han.ica.icss.ast.*;
-import nl.han.ica.icss.ast.literals.*;
 import nl.han.ica.icss.ast.operations.*;
 import nl.han.ica.icss.ast.types.ExpressionType;
+import nl.han.ica.icss.ast.types.PropertySchema;
+import nl.han.ica.icss.metrics.events.StyleruleEvent;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 /*
 Implemented:
@@ -21,178 +27,237 @@ Implemented:
 NOTES:
  - Code is a bit messy (E.g., not ordered) -> Might have to resolve this down the line for readability.
  - Might be good to document standard flow as well, doubt I'll remember this if I pause for a few days.
- - Maybe make own hashmap to implement?
+ - Maybe make own hashmap to implement? -> Did: scopes are HANIntMaps keyed on the symbol id of the variable (see SymbolTable).
 
  */
 
 public class Checker {
 
-    private IHANLinkedList<HashMap<String, ExpressionType>> variableTypes;
+    private IHANLinkedList<HANIntMap<ExpressionType>> variableTypes;
+    private SymbolTable symbols;
+    private final PropertySchema schema = PropertySchema.get();
 
     public void check(AST ast) {
         variableTypes = new HANLinkedList<>();
+        symbols = ast.symbols;
 
         // Top-level scope (Global definition of vars)
-        variableTypes.addFirst(new HashMap<>());
+        variableTypes.addFirst(new HANIntMap<>());
 
         // ! Entrypoint !
         if (ast.root != null) {
             checkNode(ast.root);
         }
+
+        // Give every variable reference its (scope depth, slot), used by the Evaluator
+        new Resolver().resolve(ast);
+    }
+
+    /*
+     NOTE:
+     This used to be a recursive function, but deeply nested if-clauses (or very long 'a + b + c + ...' chains, which end up
+     as a very deep tree) overflowed the call stack. It now keeps its own stack of frames, one frame per node that would've
+     been a recursive call. Work that happened before/after the recursive call now happens in 'enter', 'beforeChild',
+     'afterChild' and 'leave'. Same order as before, except that assignments in if/else bodies are registered after their
+     value is checked (like everywhere else), so 'Y := Y' in an if-body is an error now when there is no outer Y.
+     */
+    private void checkNode(ASTNode root) {
+        HANStack<Frame> stack = new HANStack<>();
+        enter(root, null, stack);
+
+        while (!stack.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Check was interrupted"); // Run was dropped (see Pipeline)
+            }
+            Frame frame = stack.peek();
+
+            // Back from the last child
+            if (frame.visiting != null) {
+                afterChild(frame, frame.visiting);
+                frame.visiting = null;
+            }
+
+            if (frame.next < frame.children.size()) {
+                ASTNode child = frame.children.get(frame.next++);
+                beforeChild(frame, child);
+                frame.visiting = child;
+                enter(child, frame.node, stack); // 'Recurse'
+            } else {
+                stack.pop();
+                leave(frame, stack);
+            }
+        }
     }
 
-    private void checkNode(ASTNode node) {
+    // Start of visiting a node, pushes the frame for its children (if there's anything to visit)
+    private void enter(ASTNode node, ASTNode parent, HANStack<Frame> stack) {
 
         if (node == null) return; // Guard
 
         // Handle IfClauses
         if (node instanceof IfClause) {
-            checkIfClause((IfClause) node);
+            enterIfClause((IfClause) node, stack);
             return;
         }
 
-        boolean newScopePushed = false;
+        Frame frame = new Frame(node, node.getChildren(), Frame.NODE);
+
+        // Time spent per rule, for finding slow rules in a flight recording
+        frame.ruleEvent = node instanceof Stylerule ? StyleruleEvent.begin(StyleruleEvent.CHECK, (Stylerule) node) : null;
 
         if (node instanceof Stylerule || node instanceof ElseClause) { // Push new scope (Extra scope-push for else-clause here to accommodate for style-rule variables
-            variableTypes.addFirst(new HashMap<>());
-            newScopePushed = true;
+            variableTypes.addFirst(new HANIntMap<>());
+            frame.scopePushed = true;
         }
 
 
-        // Check math operations
-        if (node instanceof Operation) {
-            /*
-             NOTE:
-             We aren't using the 'get' of this function in this context.
-             The code that checks for whether math is valid per the rules calls the 'getExpressionType();' function recursively.
-             So that function DOES need the values returned from its recursive calls.
-             Feels a bit off to call a get function and not doing anything with the value, probably not good convention-wise, but it works... for now.
-             */
-            getExpressionType(node);
+        // Type variable references with the variable they refer to in the current scope (not the name of an assignment)
+        if (node instanceof VariableReference && !(parent instanceof VariableAssignment && ((VariableAssignment) parent).name == node)) {
+            VariableReference ref = (VariableReference) node;
+            ref.setType(resolveVariableType(symbols.symbolOf(ref)));
         }
 
-        // Traverse AST
-        for (ASTNode child : node.getChildren()) {
+        stack.push(frame);
+    }
 
+    private void beforeChild(Frame frame, ASTNode child) {
+        if (frame.kind == Frame.NODE) {
             // Skip variable references that are nested inside variable assignments. (Still don't know why var reference has to be defined in an assignment? Oh, well!)
             if (child instanceof VariableReference
-                    && !(node instanceof VariableAssignment && node.getChildren().get(0) == child)) {
+                    && !(frame.node instanceof VariableAssignment && frame.children.get(0) == child)) {
                 handleVariableReference((VariableReference) child);
             }
+        }
+    }
 
-            // Recurse
-            checkNode(child);
-
-            // Registering variable assignment after visiting the right hand side (To get value first)
-            // Doing this otherwise the order of eval would be wrong, might need to sketch this out a bit better.
-            if (child instanceof VariableAssignment) {
-                handleVariableAssignment((VariableAssignment) child);
-            }
+    private void afterChild(Frame frame, ASTNode child) {
+        // Registering variable assignment after visiting the right hand side (To get value first)
+        // Doing this otherwise the order of eval would be wrong, might need to sketch this out a bit better.
+        // NOTE: If/else bodies used to register them before visiting (so before their value was typed), now it's the same everywhere.
+        if (child instanceof VariableAssignment) {
+            handleVariableAssignment((VariableAssignment) child);
         }
 
-        // Check properties (e.g., width, color)
-        if (node instanceof Declaration) {
-            checkDeclaration((Declaration) node);
+        // The condition is the first child of an if-body frame, it's typed by now
+        if (frame.kind == Frame.IF_BODY && child == ((IfClause) frame.node).conditionalExpression) {
+            checkCondition((IfClause) frame.node);
         }
+    }
 
-        if (newScopePushed) { // Pop scope when leaving the scope-context
-            variableTypes.removeFirst();
+    // All children visited
+    private void leave(Frame frame, HANStack<Frame> stack) {
+        switch (frame.kind) {
+            case Frame.IF_BODY:
+                variableTypes.removeFirst(); // Pop if scope
+                enterElseClause((IfClause) frame.node, stack);
+                break;
+            case Frame.ELSE_BODY:
+                variableTypes.removeFirst(); // Pop else scope
+                break;
+            default:
+                // Both sides are typed (and checked) by now, so every operation is typed exactly once
+                if (frame.node instanceof Operation) {
+                    typeOperation((Operation) frame.node);
+                }
+
+                // Check properties (e.g., width, color)
+                if (frame.node instanceof Declaration) {
+                    checkDeclaration((Declaration) frame.node);
+                }
+
+                if (frame.scopePushed) { // Pop scope when leaving the scope-context
+                    variableTypes.removeFirst();
+                }
+
+                if (frame.ruleEvent != null) {
+                    frame.ruleEvent.commit();
+                }
         }
     }
 
     // Check for declarations (e.g., Width, Color, etc)
-    // NOTE: I'm only checking variables used for declarations, the parser makes sure declarations can't have any wrong types (e.g., hexvals in dimensional declarations are not possible, unless done by variable, which is checked here)
+    // NOTE: The parser only knows 'color' and 'dimension' declarations, the PropertySchema knows exactly which types a
+    // property takes (e.g. z-index only takes a SCALAR), so not only variables are checked here anymore.
     private void checkDeclaration(Declaration decl) {
-        if (decl.expression == null) return; // Guard
+        if (decl.expression == null || decl.property == null) return; // Guard
 
-        // This list contains all allowed types of 'ExpressionType' a property may have. (e.g, Dimension properties can have SCALAR, PERCENTAGE, but if-clause only a BOOLEAN)
-        ExpressionType[] expectedTypes = getExpectedPropertyTypes(decl.property.name);
+        int property = symbols.symbolOf(decl.property);
 
         if (decl.expression instanceof VariableReference) {
 
             VariableReference ref = (VariableReference) decl.expression;
-            ExpressionType actualType = resolveVariableType(ref.name);
+            ExpressionType actualType = typeOf(ref);
 
             if (actualType == ExpressionType.UNDEFINED) { // Variable not defined or type not properly set IN a 'declaration'
                 ref.setError("Variable '" + ref.name + "' is not defined or has unknown type.");
-            } else if (!isTypeAllowed(actualType, expectedTypes)) { // Compare type of the variable to the declaration it's being used in.
+            } else if (!schema.isAllowed(property, actualType)) { // Compare type of the variable to the declaration it's being used in.
                 /* NOTE: Currently you can get an error like 'Property 'height' expects one of PIXEL, PERCENTAGE, SCALAR but got COLOR.'
                   Properties don't just allow a singular SCALAR value, only in math, so maybe have to change the allowed types or the error. */
-                decl.setError("Property '" + decl.property.name + "' expects one of " +
-                        formatAllowedTypes(expectedTypes) + " but got " + actualType + ".");
+                setPropertyTypeError(decl, property, actualType);
             }
+            return;
         }
-    }
 
+        // Literal or operation (typed when it was visited, UNDEFINED = already has an error)
+        ExpressionType actualType = typeOf(decl.expression);
+        if (actualType != ExpressionType.UNDEFINED && !schema.isAllowed(property, actualType)) {
+            setPropertyTypeError(decl, property, actualType);
+        }
+    }
 
-    // Mapping property names to their respective expression types that are allowed.
-    private ExpressionType[] getExpectedPropertyTypes(String propertyName) {
-        if (propertyName == null) return new ExpressionType[]{ExpressionType.UNDEFINED}; // Guard
-
-        // NOTE: Switch is probably most readable in this case, not sure if it's the fastest though... will have to look into it.
-        switch (propertyName) {
-            case "color":
-            case "background-color":
-                return new ExpressionType[]{ExpressionType.COLOR};
-            case "width":
-            case "height":
-                return new ExpressionType[]{ExpressionType.PIXEL, ExpressionType.PERCENTAGE, ExpressionType.SCALAR};
-            default:
-                return new ExpressionType[]{ExpressionType.UNDEFINED};
+    private void setPropertyTypeError(Declaration decl, int property, ExpressionType actualType) {
+        if (!schema.isProperty(property)) {
+            decl.setError("Unknown property '" + decl.property.name + "'.");
+            return;
         }
+        decl.setError("Property '" + decl.property.name + "' expects one of " +
+                formatAllowedTypes(schema.getAllowedTypes(property)) + " but got " + actualType + ".");
     }
 
 
     // Using a separated func for readability, checks if-else bodies for any problems. (Works in separated scopes)
-    private void checkIfClause(IfClause ifClause) {
+    private void enterIfClause(IfClause ifClause, HANStack<Frame> stack) {
         if (ifClause.conditionalExpression == null) return; // Guard
 
-        // Check condition type
-        ASTNode condition = ifClause.conditionalExpression;
-        ExpressionType type = getExpressionType(condition);
-
-        if (type != ExpressionType.BOOL) {
-            ifClause.setError("Condition in if-statement must be of type BOOLEAN but got " + type + ".");
-        }
-
-        variableTypes.addFirst(new HashMap<>()); // Push new if scope
-        // Check if-body (Separate scope)
+        // Check if-body (Separate scope), the else-body is checked after this frame is done (see leave)
+        // NOTE: The condition is the first child of the frame, its type is checked once it's visited (see afterChild)
+        ArrayList<ASTNode> ifBody = new ArrayList<>();
         for (ASTNode child : ifClause.getChildren()) {
             if (!(child instanceof ElseClause)) { // Skip else statements
-                if (child instanceof VariableAssignment) {
-                    handleVariableAssignment((VariableAssignment) child);
-                }
-                checkNode(child);
+                ifBody.add(child);
             }
         }
-        variableTypes.removeFirst(); // Pop if scope
 
+        variableTypes.addFirst(new HANIntMap<>()); // Push new if scope
+        stack.push(new Frame(ifClause, ifBody, Frame.IF_BODY));
+    }
 
-        // Check else-body (Separate scope)
-        if (ifClause.elseClause != null) {
-            variableTypes.addFirst(new HashMap<>()); // Push else scope
-            for (ASTNode child : ifClause.elseClause.getChildren()) {
-                if (child instanceof VariableAssignment) {
-                    handleVariableAssignment((VariableAssignment) child);
-                }
-                checkNode(child);
-            }
-            variableTypes.removeFirst(); // Pop else scope
+    private void checkCondition(IfClause ifClause) {
+        ExpressionType type = typeOf(ifClause.conditionalExpression);
+
+        if (type != ExpressionType.BOOL) {
+            ifClause.setError("Condition in if-statement must be of type BOOLEAN but got " + type + ".");
         }
     }
 
+    // Check else-body (Separate scope)
+    private void enterElseClause(IfClause ifClause, HANStack<Frame> stack) {
+        if (ifClause.elseClause != null) {
+            variableTypes.addFirst(new HANIntMap<>()); // Push else scope
+            stack.push(new Frame(ifClause.elseClause, ifClause.elseClause.getChildren(), Frame.ELSE_BODY));
+        }
+    }
 
     // Adds variable assignment to current scope
     private void handleVariableAssignment(VariableAssignment node) {
         if (node.name == null || node.name.name == null) return; // Guard
 
-        String varName = node.name.name;
-        HashMap<String, ExpressionType> currentScope = variableTypes.getFirst();
+        int varName = symbols.symbolOf(node.name);
+        HANIntMap<ExpressionType> currentScope = variableTypes.getFirst();
 
         // Get the variable value (else undefined) and pushes to the scope.
         if (node.expression != null) {
-            ExpressionType type = getExpressionType(node.expression);
-            currentScope.put(varName, type);
+            currentScope.put(varName, typeOf(node.expression)); // Already typed, the assignment is registered after visiting it
         } else {
             currentScope.put(varName, ExpressionType.UNDEFINED);
         }
@@ -200,17 +265,14 @@ public class Checker {
 
     // Validates if variable that's being referenced exists / is accessible in respective scope.
     private void handleVariableReference(VariableReference node) {
-        String varName = node.name;
-
-        if (!isVariableDefined(varName)) {
-            node.setError("Variable '" + varName + "' is not defined in this scope.");
+        if (!isVariableDefined(symbols.symbolOf(node))) {
+            node.setError("Variable '" + node.name + "' is not defined in this scope.");
         }
     }
 
-    private boolean isVariableDefined(String name) {
+    private boolean isVariableDefined(int name) {
         // Search from innermost -> outermost scope
-        for (int i = 0; i < variableTypes.getSize(); i++) {
-            HashMap<String, ExpressionType> scope = variableTypes.get(i);
+        for (HANIntMap<ExpressionType> scope : variableTypes) {
             if (scope.containsKey(name)) {
                 return true;
             }
@@ -219,54 +281,46 @@ public class Checker {
     }
 
     // Practically duplication from 'isVariableDefined' but gets the actual type. Could probably condense into one function. (Won't do it, but I can see the merit in doing so)
-    private ExpressionType resolveVariableType(String name) {
-        for (int i = 0; i < variableTypes.getSize(); i++) {
-            HashMap<String, ExpressionType> scope = variableTypes.get(i);
-            if (scope.containsKey(name)) {
-                return scope.get(name);
+    private ExpressionType resolveVariableType(int name) {
+        for (HANIntMap<ExpressionType> scope : variableTypes) {
+            ExpressionType type = scope.get(name);
+            if (type != null) {
+                return type;
             }
         }
         return ExpressionType.UNDEFINED;
     }
 
-    // Resolves any node to it's ExpressionType (Literals, Variables, Math, etc.)
-    private ExpressionType getExpressionType(ASTNode node) {
-
-        // Directly return the expression type if it's a Literal.
-        if (node instanceof BoolLiteral) return ExpressionType.BOOL;
-        if (node instanceof ColorLiteral) return ExpressionType.COLOR;
-        if (node instanceof PixelLiteral) return ExpressionType.PIXEL;
-        if (node instanceof PercentageLiteral) return ExpressionType.PERCENTAGE;
-        if (node instanceof ScalarLiteral) return ExpressionType.SCALAR;
-
-        // Resolve Variable References
-        if (node instanceof VariableReference) {
-            return resolveVariableType(((VariableReference) node).name);
+    /*
+     NOTE:
+     Every expression is typed once, bottom-up, while it's visited: literals know their type, a variable reference gets the
+     type of its variable when it's entered and an operation gets its type when it's left (both sides are typed by then).
+     The type is stored on the node (Expression.getType), so declarations, conditions and assignments just read it.
+     This used to re-type the whole operation (for the outermost one, and again for an assignment).
+     */
+    private static ExpressionType typeOf(ASTNode node) {
+        if (node instanceof Expression) {
+            ExpressionType type = ((Expression) node).getType();
+            if (type != null) return type;
         }
-
-        // NOTE: Errors are set on the Operation node, not the actual node that is causing the issue. (e.g., VarRef in the operation)
-        if (node instanceof Operation) {
-            return handleOperation((Operation) node);
-        }
-
         return ExpressionType.UNDEFINED;
     }
 
-    private ExpressionType handleOperation(Operation op) {
+    private void typeOperation(Operation op) {
+        op.setType(handleOperation(op, typeOf(op.lhs), typeOf(op.rhs)));
+    }
 
-        // Recurse
-        ExpressionType lhsType = getExpressionType(op.lhs);
-        ExpressionType rhsType = getExpressionType(op.rhs);
-        // ---
+    // NOTE: Errors are set on the Operation node, not the actual node that is causing the issue. (e.g., VarRef in the operation)
+    private ExpressionType handleOperation(Operation op, ExpressionType lhsType, ExpressionType rhsType) {
 
         // Reject if either side is undefined.
         if (lhsType == ExpressionType.UNDEFINED || rhsType == ExpressionType.UNDEFINED) {
             return ExpressionType.UNDEFINED;
         }
 
-        // Prevent colors from being used in any math operation
-        if (lhsType == ExpressionType.COLOR || rhsType == ExpressionType.COLOR) {
-            op.setError("Cannot use COLOR in math operations.");
+        // Colors can only be added to/subtracted from each other (per channel), not multiplied
+        if (op instanceof MultiplyOperation && (lhsType == ExpressionType.COLOR || rhsType == ExpressionType.COLOR)) {
+            op.setError("Cannot multiply a COLOR, colors can only be added or subtracted.");
             return ExpressionType.UNDEFINED;
         }
 
@@ -309,23 +363,37 @@ public class Checker {
         return ExpressionType.UNDEFINED;
     }
 
-    // Compares to the list of allowed types and the type currently set in the AST, true if allowed, false if not.
-    private boolean isTypeAllowed(ExpressionType type, ExpressionType[] allowed) {
-        for (ExpressionType allowedType : allowed) {
-            if (type == allowedType) return true;
-        }
-        return false;
-    }
-
     // Used to indicate which allowed expression types are allowed (For error messages)
-    private String formatAllowedTypes(ExpressionType[] allowed) {
+    private String formatAllowedTypes(Set<ExpressionType> allowed) {
         StringBuilder sb = new StringBuilder();
 
-        for (int i = 0; i < allowed.length; i++) {
-            sb.append(allowed[i]);
-            if (i < allowed.length - 1) sb.append(", ");
+        for (ExpressionType type : allowed) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(type);
         }
 
         return sb.toString();
     }
+
+    // One level of the traversal in checkNode
+    private static final class Frame {
+        static final int NODE = 0;      // Any node, children visited like the old recursive checkNode did
+        static final int IF_BODY = 1;   // Body of an if-clause (in its own scope)
+        static final int ELSE_BODY = 2; // Body of an else-clause (in its own scope)
+
+        final ASTNode node;
+        final List<ASTNode> children;
+        final int kind;
+
+        int next = 0;          // Index of the next child to visit
+        ASTNode visiting;      // Child currently being visited, gets its after-work when we're back in this frame
+        boolean scopePushed;
+        StyleruleEvent ruleEvent;
+
+        Frame(ASTNode node, List<ASTNode> children, int kind) {
+            this.node = node;
+            this.children = children;
+            this.kind = kind;
+        }
+    }
 }
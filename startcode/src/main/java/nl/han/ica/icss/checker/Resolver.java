@@ -0,0 +1,152 @@
+package nl.han.ica.icss.checker;
+
+import nl.han.ica.datastructures.HANIntMap;
+import nl.han.ica.datastructures.HANLinkedList;
+import nl.han.ica.datastructures.HANStack;
+import nl.han.ica.datastructures.IHANLinkedList;
+import nl.han.ica.icss.ast.*;
+
+import java.util.List;
+
+/*
+ Gives every variable a fixed place (lexical addressing), so the Evaluator doesn't have to look variables up by name.
+
+ Uses the same scopes as the Checker: the stylesheet is scope depth 0, every Stylerule, if-body and else-body opens a
+ scope one deeper. Each variable defined in a scope gets the next free slot of that scope. Every VariableReference
+ (also the name of a VariableAssignment) is annotated with the (scopeDepth, slot) it refers to, so the Evaluator can
+ keep one array per open scope and read a variable with 'frames[scopeDepth][slot]'.
+
+ NOTE:
+ - Runs after the Checker, it doesn't report errors. A reference to an unknown variable stays UNRESOLVED.
+ - Same as the Checker, a variable is only defined after its expression is resolved, so 'A := A + 1px' in an if-body
+   reads the A from the outer scope (and 'Y := Y' with no outer Y is an error of the Checker, the Y stays UNRESOLVED).
+ */
+public class Resolver {
+
+    // Innermost scope first, symbol id of the name -> slot
+    private IHANLinkedList<HANIntMap<Integer>> scopes;
+    private int depth;
+    private SymbolTable symbols;
+
+    public void resolve(AST ast) {
+        if (ast.root == null) return; // Guard
+
+        scopes = new HANLinkedList<>();
+        symbols = ast.symbols;
+        depth = -1;
+
+        // Walks the bodies with an explicit stack (same as the Checker), one frame per open scope
+        HANStack<Frame> stack = new HANStack<>();
+        stack.push(openScope(ast.root.body, null));
+
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+
+            if (frame.next >= frame.body.size()) {
+                stack.pop();
+                closeScope();
+
+                // Else-body gets its own scope after the if-body is done
+                if (frame.elseClause != null) {
+                    stack.push(openScope(frame.elseClause.body, null));
+                }
+                continue;
+            }
+
+            ASTNode statement = frame.body.get(frame.next++);
+
+            if (statement instanceof Stylerule) {
+                stack.push(openScope(((Stylerule) statement).body, null));
+
+            } else if (statement instanceof IfClause) {
+                IfClause ifClause = (IfClause) statement;
+                resolveExpression(ifClause.conditionalExpression); // Condition belongs to the enclosing scope
+                stack.push(openScope(ifClause.body, ifClause.elseClause));
+
+            } else if (statement instanceof VariableAssignment) {
+                VariableAssignment assignment = (VariableAssignment) statement;
+                resolveExpression(assignment.expression);
+                define(assignment.name);
+
+            } else if (statement instanceof Declaration) {
+                resolveExpression(((Declaration) statement).expression);
+            }
+        }
+    }
+
+    private Frame openScope(List<ASTNode> body, ElseClause elseClause) {
+        scopes.addFirst(new HANIntMap<>());
+        depth++;
+        return new Frame(body, elseClause);
+    }
+
+    private void closeScope() {
+        scopes.removeFirst();
+        depth--;
+    }
+
+    // Gives the variable a slot in the current scope (or the slot it already has there, when it's assigned again)
+    private void define(VariableReference name) {
+        if (name == null || name.name == null) return; // Guard
+
+        int symbol = symbols.symbolOf(name);
+        HANIntMap<Integer> scope = scopes.getFirst();
+        Integer slot = scope.get(symbol);
+        if (slot == null) {
+            slot = scope.getSize();
+            scope.put(symbol, slot);
+        }
+        name.scopeDepth = depth;
+        name.slot = slot;
+    }
+
+    // Annotates all variable references in the expression (operations are walked without recursion)
+    private void resolveExpression(Expression expression) {
+        if (expression == null) return; // Guard
+
+        HANStack<ASTNode> work = new HANStack<>();
+        work.push(expression);
+
+        while (!work.isEmpty()) {
+            ASTNode node = work.pop();
+
+            if (node instanceof VariableReference) {
+                resolveReference((VariableReference) node);
+            } else if (node instanceof Operation) {
+                Operation operation = (Operation) node;
+                if (operation.lhs != null) work.push(operation.lhs);
+                if (operation.rhs != null) work.push(operation.rhs);
+            }
+        }
+    }
+
+    // Search from innermost -> outermost scope
+    private void resolveReference(VariableReference reference) {
+        int symbol = symbols.symbolOf(reference);
+        int scopeDepth = depth;
+        for (HANIntMap<Integer> scope : scopes) {
+            Integer slot = scope.get(symbol);
+            if (slot != null) {
+                reference.scopeDepth = scopeDepth;
+                reference.slot = slot;
+                return;
+            }
+            scopeDepth--;
+        }
+        reference.scopeDepth = VariableReference.UNRESOLVED;
+        reference.slot = VariableReference.UNRESOLVED;
+    }
+
+    // A body that is being walked, with its own scope
+    private static final class Frame {
+        final List<ASTNode> body;
+        final ElseClause elseClause; // Else-body to walk after this (if-)body, or null
+
+        int next = 0;
+
+        Frame(List<ASTNode> body, ElseClause elseClause) {
+            this.body = body;
+            this.elseClause = elseClause;
+        }
+    }
+}
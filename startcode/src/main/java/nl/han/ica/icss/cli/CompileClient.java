@@ -0,0 +1,131 @@
+package nl.han.ica.icss.cli;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Thin client for the {@link CompileDaemon}, so build scripts can compile without starting a JVM with a cold JIT each time.
+ * All inputs are sent on one connection without waiting for each response (pipelining), but never more than the daemon
+ * takes in flight per connection: past that it stops reading, and a client that keeps writing instead of reading
+ * the responses would deadlock with it.
+ */
+public class CompileClient {
+
+    // How often (and how long) to back off when the daemon answers BUSY
+    private static final int BUSY_RETRIES = 10;
+    private static final long BUSY_BACKOFF_MILLIS = 50;
+
+    private CompileClient() { }
+
+    /**
+     * Compiles the inputs through the daemon, see {@link HeadlessMain} for how inputs map to outputs.
+     * @param port daemon port on the loopback interface
+     * @param inputs the .icss files to compile
+     * @param output output file for a single input, null for stdout (or 'x.css' files with multiple inputs)
+     * @return exit code
+     */
+    static int compile(int port, List<Path> inputs, Path output) {
+        byte[][] sources = new byte[inputs.size()][];
+        for (int i = 0; i < inputs.size(); i++) {
+            try {
+                sources[i] = Files.readAllBytes(inputs.get(i));
+            } catch (IOException e) {
+                System.err.println(inputs.get(i) + ": " + e);
+                return HeadlessMain.COMPILE_ERRORS;
+            }
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            // The daemon answers in request order, so the window is [i, sent): answered up to i, sent up to 'sent'
+            int sent = 0;
+            int exitCode = HeadlessMain.OK;
+            for (int i = 0; i < sources.length; i++) {
+                while (sent < sources.length && sent - i < CompileDaemon.MAX_IN_FLIGHT_PER_CONNECTION) {
+                    writeRequest(out, sources[sent++]);
+                }
+                out.flush();
+
+                CompileDaemon.Response response = CompileDaemon.Response.readFrom(in);
+
+                // Daemon is overloaded, retry this one by itself after a short back-off
+                for (int retry = 0; response.status == CompileDaemon.BUSY && retry < BUSY_RETRIES; retry++) {
+                    Thread.sleep(BUSY_BACKOFF_MILLIS << retry);
+                    response = compileSingle(port, sources[i]);
+                }
+
+                if (!handleResponse(inputs.get(i), response, targetFor(inputs, i, output))) {
+                    exitCode = HeadlessMain.COMPILE_ERRORS;
+                }
+            }
+            return exitCode;
+
+        } catch (IOException e) {
+            System.err.println("Cannot reach icss daemon on port " + port + ": " + e);
+            return HeadlessMain.COMPILE_ERRORS;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return HeadlessMain.COMPILE_ERRORS;
+        }
+    }
+
+    /**
+     * Asks the daemon to stop (running compiles still finish).
+     * @param port daemon port on the loopback interface
+     * @return exit code
+     */
+    static int stop(int port) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            out.writeInt(CompileDaemon.STOP_REQUEST);
+            out.flush();
+            return HeadlessMain.OK;
+        } catch (IOException e) {
+            System.err.println("Cannot reach icss daemon on port " + port + ": " + e);
+            return HeadlessMain.COMPILE_ERRORS;
+        }
+    }
+
+    private static CompileDaemon.Response compileSingle(int port, byte[] source) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            writeRequest(out, source);
+            out.flush();
+            return CompileDaemon.Response.readFrom(in);
+        }
+    }
+
+    private static void writeRequest(DataOutputStream out, byte[] source) throws IOException {
+        out.writeInt(source.length);
+        out.write(source);
+    }
+
+    private static boolean handleResponse(Path input, CompileDaemon.Response response, Path target) throws IOException {
+        if (response.status != CompileDaemon.OK) {
+            for (String error : response.payload.split("\n")) {
+                System.err.println(input + ": " + error);
+            }
+            return false;
+        }
+
+        if (target == null) {
+            System.out.print(response.payload);
+        } else {
+            Files.writeString(target, response.payload, StandardCharsets.UTF_8);
+        }
+        return true;
+    }
+
+    private static Path targetFor(List<Path> inputs, int index, Path output) {
+        if (output != null) return output;
+        return inputs.size() > 1 ? HeadlessMain.toCssPath(inputs.get(index)) : null;
+    }
+}
@@ -0,0 +1,294 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.parser.ParserPool;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Long-running compile server on a loopback TCP port, so the JIT and the ANTLR DFA cache stay warm between builds.
+ *
+ * Protocol (big-endian, see {@link DataInputStream}), multiple requests may be sent on one connection without
+ * waiting for the responses (pipelining), responses come back in request order:
+ * <pre>
+ *  request:  int length, byte[length] ICSS source (UTF-8)   | int -1 = stop the daemon
+ *  response: byte status, int length, byte[length] payload  | status OK: CSS, ERRORS: one error per line, BUSY: queue full
+ * </pre>
+ * Every request is compiled with its own {@link Pipeline} on a bounded thread pool.
+ * When the pool's queue is full the request is answered with BUSY straight away instead of piling up.
+ */
+public class CompileDaemon implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 7423;
+
+    // Response status codes
+    public static final byte OK = 0;
+    public static final byte ERRORS = 1;
+    public static final byte BUSY = 2;
+
+    // Special request length to stop the daemon
+    public static final int STOP_REQUEST = -1;
+
+    // Max. size of a single request, so a broken client cannot make us allocate gigabytes
+    private static final int MAX_REQUEST_BYTES = 64 * 1024 * 1024;
+    // Max. responses a connection may have outstanding before we stop reading from it (TCP does the rest),
+    // a pipelining client has to read responses before it sends more than this (see CompileClient)
+    static final int MAX_IN_FLIGHT_PER_CONNECTION = 64;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    // How often a reader waiting for room in the in-flight queue checks whether the writer is still alive
+    private static final long WRITER_CHECK_MILLIS = 100;
+
+    private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService connections = Executors.newCachedThreadPool(WatchMode.daemonThreads("icss-daemon-connection"));
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private volatile boolean running = true;
+
+    public CompileDaemon(int port, int threads, int queueCapacity) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), WatchMode.daemonThreads("icss-daemon-worker"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the daemon is stopped, then waits for the running compiles to finish.
+     */
+    public void serve() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> handle(socket));
+            } catch (SocketException e) {
+                break; // Server socket was closed by stop()
+            } catch (IOException e) {
+                System.err.println("icss daemon: " + e);
+            }
+        }
+        awaitShutdown();
+    }
+
+    /*
+     Reads the requests from one connection and hands out the compiles, a separate writer sends the responses in order.
+     NOTE: The connection is only closed once the writer is done, so every request that was read gets its response, also
+     when the client stops halfway through a request or the daemon is stopped (requests after that are answered with BUSY).
+     */
+    private void handle(Socket socket) {
+        BlockingQueue<Future<Response>> inFlight = new ArrayBlockingQueue<>(MAX_IN_FLIGHT_PER_CONNECTION);
+
+        openSockets.add(socket);
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Future<?> writer = connections.submit(() -> writeResponses(inFlight, out));
+
+            try {
+                readRequests(in, inFlight, writer);
+            } catch (IOException e) {
+                // Client stopped sending (halfway through a request), what was read already is still answered
+            }
+
+            // Let the writer drain the accepted compiles, then close
+            enqueue(inFlight, END_OF_RESPONSES, writer);
+            writer.get();
+        } catch (IOException | ExecutionException | RejectedExecutionException e) {
+            // Connection dropped (nothing to respond to anymore), or the daemon stopped before this connection got a writer
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    // Reads requests until the client is done sending, also after the daemon stopped (see submit)
+    private void readRequests(DataInputStream in, BlockingQueue<Future<Response>> inFlight, Future<?> writer)
+            throws IOException, InterruptedException {
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return; // Client is done sending
+            }
+
+            if (length == STOP_REQUEST) {
+                stop();
+                return;
+            }
+            if (length < 0 || length > MAX_REQUEST_BYTES) {
+                enqueue(inFlight, CompletableFuture.completedFuture(new Response(ERRORS, "Invalid request length: " + length)), writer);
+                return;
+            }
+
+            byte[] source = new byte[length];
+            in.readFully(source);
+            if (!enqueue(inFlight, submit(new String(source, StandardCharsets.UTF_8)), writer)) {
+                return; // Writer died, nothing can be answered on this connection anymore
+            }
+        }
+    }
+
+    /*
+     Hands a response to the writer, waits while the connection has too many in flight. Gives up when the writer is done:
+     it only stops early when writing failed, a put would then block forever on the full queue (and leak this thread).
+     */
+    private static boolean enqueue(BlockingQueue<Future<Response>> inFlight, Future<Response> response, Future<?> writer)
+            throws InterruptedException {
+        while (!inFlight.offer(response, WRITER_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (writer.isDone()) return false;
+        }
+        return true;
+    }
+
+    private Future<Response> submit(String source) {
+        try {
+            return workers.submit(() -> compile(source));
+        } catch (RejectedExecutionException e) {
+            // Queue full (or shutting down), tell the client to back off instead of queueing without bound
+            return CompletableFuture.completedFuture(new Response(BUSY, running ? "Compile queue is full" : "Daemon is shutting down"));
+        }
+    }
+
+    // NOTE: No generate executor, the requests already run in parallel on the workers (at most --threads of them)
+    private static Response compile(String source) {
+        Pipeline pipeline = new Pipeline();
+        String css = pipeline.compile(source);
+
+        if (css == null) {
+            return new Response(ERRORS, String.join("\n", pipeline.getErrors()));
+        }
+        return new Response(OK, css);
+    }
+
+    private static Void writeResponses(BlockingQueue<Future<Response>> inFlight, DataOutputStream out) throws Exception {
+        while (true) {
+            Future<Response> next = inFlight.take();
+            if (next == END_OF_RESPONSES) break;
+
+            Response response;
+            try {
+                response = next.get();
+            } catch (ExecutionException e) {
+                response = new Response(ERRORS, "Internal error: " + e.getCause());
+            }
+            response.writeTo(out);
+
+            if (inFlight.isEmpty()) {
+                out.flush(); // Only flush when we'd otherwise wait, pipelined responses go out in one batch
+            }
+        }
+        out.flush();
+        return null;
+    }
+
+    /**
+     * Stops accepting new connections, compiles that were already accepted still get their response:
+     * {@link #serve()} (and {@link #close()}) only return once those are written. Requests that open connections send
+     * after this are answered with BUSY.
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /*
+     NOTE:
+     The connection threads (readers and writers) are daemon threads, so they have to be waited for as well, otherwise the
+     process can exit before the responses of the accepted compiles are written. A connection ends when its client is done
+     sending (the compiles it asks for after the stop are answered with BUSY). Connections that are still open after the
+     timeout (a client that doesn't stop sending, or doesn't read) are closed.
+     */
+    private void awaitShutdown() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            connections.shutdown();
+            if (!connections.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                for (Socket socket : openSockets) {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // Already closed
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stopped.countDown();
+    }
+
+    @Override
+    public void close() {
+        stop();
+        try {
+            stopped.await(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Marker to tell the writer that the client stopped sending
+    private static final Future<Response> END_OF_RESPONSES = CompletableFuture.completedFuture(null);
+
+    static final class Response {
+        final byte status;
+        final String payload;
+
+        Response(byte status, String payload) {
+            this.status = status;
+            this.payload = payload;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(status);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        static Response readFrom(DataInputStream in) throws IOException {
+            byte status = in.readByte();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Response(status, new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Runs the daemon in the foreground until it gets stopped (stop request, Ctrl+C or SIGTERM).
+     */
+    static int run(int port, int threads, int queueCapacity) {
+        ParserPool.warmUp();
+
+        try (CompileDaemon daemon = new CompileDaemon(port, threads, queueCapacity)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "icss-daemon-shutdown"));
+
+            System.err.println("icss daemon listening on 127.0.0.1:" + daemon.getPort()
+                    + " (" + threads + " workers, queue " + queueCapacity + ")");
+            daemon.serve();
+        } catch (IOException e) {
+            System.err.println("icss daemon: " + e);
+            return HeadlessMain.COMPILE_ERRORS;
+        }
+        return HeadlessMain.OK;
+    }
+}
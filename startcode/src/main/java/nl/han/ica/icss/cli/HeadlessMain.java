@@ -0,0 +1,265 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.metrics.JfrReport;
+import nl.han.ica.icss.metrics.PipelineMetrics;
+import nl.han.ica.icss.parser.ParserPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line entrypoint that compiles ICSS to CSS without starting the GUI.
+ *
+ * NOTE: This class (and everything it uses) must not touch JavaFX or Guava, so a short-lived build step
+ * only loads the ANTLR runtime and the compiler classes. See the 'cds' profile in pom.xml and bin/icssc.
+ */
+public class HeadlessMain {
+
+    // Exit codes
+    static final int OK = 0;
+    static final int COMPILE_ERRORS = 1;
+    static final int USAGE = 2;
+
+    // Bundled samples used for the training run of the CDS archive
+    private static final String[] TRAINING_SAMPLES = {"level0.icss", "level1.icss", "level2.icss", "level3.icss"};
+    private static final int TRAINING_ROUNDS = 20;
+
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 150;
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final int DEFAULT_REPORT_TOP = 20;
+
+    private static final String USAGE_TEXT = String.join("\n",
+            "Usage: icssc [--metrics] [-o <output.css>] <input.icss>...",
+            "       icssc --watch [--debounce <ms>] <directory>...",
+            "       icssc --daemon [--port <port>] [--threads <n>] [--queue <n>]",
+            "       icssc --client [--port <port>] [-o <output.css>] <input.icss>...",
+            "       icssc --stop [--port <port>]",
+            "       icssc --jfr-report <recording.jfr> [--top <n>]",
+            "       icssc --train",
+            "",
+            "  --metrics   print per-stage timings and counters as JSON (one line per input) to stderr",
+            "  -o <file>   write the CSS of a single input to <file> (default: stdout)",
+            "              with multiple inputs every 'x.icss' is written to 'x.css'",
+            "  --watch     recompile changed .icss files in the directories to .css files next to them",
+            "  --debounce  time to wait for more file events before compiling (default: " + DEFAULT_DEBOUNCE_MILLIS + " ms)",
+            "  --daemon    keep running and compile requests from --client on 127.0.0.1 (default port: " + CompileDaemon.DEFAULT_PORT + ")",
+            "  --threads   compile threads of the daemon (default: number of processors)",
+            "  --queue     compiles the daemon queues before answering BUSY (default: " + DEFAULT_QUEUE_CAPACITY + ")",
+            "  --client    compile through a running daemon instead of in this process",
+            "  --stop      stop a running daemon after it finished its current compiles",
+            "  --jfr-report  list the time per stage and the slowest rules of a flight recording, e.g. made with",
+            "              java -XX:StartFlightRecording=filename=icss.jfr ... (default top: " + DEFAULT_REPORT_TOP + ")",
+            "  --train     compile the bundled level0-3 samples (used to create the CDS archive)");
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        if (args.length == 0) {
+            System.err.println(USAGE_TEXT);
+            return USAGE;
+        }
+
+        String mode = null;
+        Path output = null;
+        List<Path> inputs = new ArrayList<>();
+        long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+        int port = CompileDaemon.DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        boolean metrics = false;
+        int top = DEFAULT_REPORT_TOP;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                boolean hasValue = i + 1 < args.length;
+
+                switch (args[i]) {
+                    case "--train":
+                    case "--watch":
+                    case "--daemon":
+                    case "--client":
+                    case "--stop":
+                    case "--jfr-report":
+                        if (mode != null) return usage("Only one of --train, --watch, --daemon, --client, --stop, --jfr-report is allowed");
+                        mode = args[i];
+                        break;
+                    case "--metrics":
+                        metrics = true;
+                        break;
+                    case "-o":
+                        if (!hasValue) return usage("Missing value for -o");
+                        output = Paths.get(args[++i]);
+                        break;
+                    case "--debounce":
+                        if (!hasValue) return usage("Missing value for --debounce");
+                        debounceMillis = Long.parseLong(args[++i]);
+                        break;
+                    case "--port":
+                        if (!hasValue) return usage("Missing value for --port");
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--threads":
+                        if (!hasValue) return usage("Missing value for --threads");
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--top":
+                        if (!hasValue) return usage("Missing value for --top");
+                        top = Integer.parseInt(args[++i]);
+                        break;
+                    case "--queue":
+                        if (!hasValue) return usage("Missing value for --queue");
+                        queueCapacity = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("-")) return usage("Unknown option: " + args[i]);
+                        inputs.add(Paths.get(args[i]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return usage("Invalid number: " + e.getMessage());
+        }
+
+        if (mode == null) mode = "";
+        switch (mode) {
+            case "--train":
+                return train();
+            case "--watch":
+                if (inputs.isEmpty()) return usage("Missing directory to watch");
+                return WatchMode.watch(inputs, debounceMillis);
+            case "--daemon":
+                if (threads < 1 || queueCapacity < 1) return usage("--threads and --queue must be at least 1");
+                return CompileDaemon.run(port, threads, queueCapacity);
+            case "--stop":
+                return CompileClient.stop(port);
+            case "--jfr-report":
+                if (inputs.size() != 1) return usage("Expected one recording");
+                return report(inputs.get(0), top);
+            default:
+                break;
+        }
+
+        if (inputs.isEmpty() || (output != null && inputs.size() > 1)) {
+            return usage(null);
+        }
+
+        if (mode.equals("--client")) {
+            return CompileClient.compile(port, inputs, output);
+        }
+
+        int exitCode = OK;
+        for (Path input : inputs) {
+            Path target = output;
+            if (target == null && inputs.size() > 1) {
+                target = toCssPath(input);
+            }
+            if (!compileFile(input, target, metrics)) {
+                exitCode = COMPILE_ERRORS;
+            }
+        }
+        return exitCode;
+    }
+
+    private static int usage(String message) {
+        if (message != null) {
+            System.err.println(message);
+        }
+        System.err.println(USAGE_TEXT);
+        return USAGE;
+    }
+
+    // Compiles a single file, writes to stdout when target is null. Errors (and metrics) go to stderr.
+    private static boolean compileFile(Path input, Path target, boolean metrics) {
+        String source;
+        try {
+            source = Files.readString(input, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println(input + ": " + e);
+            return false;
+        }
+
+        Pipeline pipeline = new Pipeline();
+        pipeline.setCollectMetrics(metrics);
+        // One file at a time, so a large one may use the other cores to generate (the daemon doesn't, see CompileDaemon)
+        pipeline.setGenerateExecutor(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+        String css = pipeline.compile(source);
+
+        if (metrics) {
+            StringBuilder json = new StringBuilder("{\"input\":");
+            PipelineMetrics.appendJsonString(json, input.toString());
+            json.append(",\"metrics\":").append(pipeline.getMetrics().toJson()).append('}');
+            System.err.println(json);
+        }
+
+        if (css == null) {
+            for (String error : pipeline.getErrors()) {
+                System.err.println(input + ": " + error);
+            }
+            return false;
+        }
+
+        if (target == null) {
+            System.out.print(css);
+            return true;
+        }
+
+        try {
+            Files.writeString(target, css, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println(target + ": " + e);
+            return false;
+        }
+        return true;
+    }
+
+    private static int report(Path recording, int top) {
+        try {
+            JfrReport.read(recording).print(System.out, top);
+            return OK;
+        } catch (IOException e) {
+            System.err.println(recording + ": " + e);
+            return COMPILE_ERRORS;
+        }
+    }
+
+    // Runs every stage over the bundled samples, so all classes used by a real compile get loaded (and archived)
+    private static int train() {
+        ParserPool.warmUp();
+
+        ClassLoader classLoader = HeadlessMain.class.getClassLoader();
+        int compiled = 0;
+
+        for (int round = 0; round < TRAINING_ROUNDS; round++) {
+            for (String sample : TRAINING_SAMPLES) {
+                try (InputStream in = classLoader.getResourceAsStream(sample)) {
+                    if (in == null) continue;
+
+                    String css = new Pipeline().compile(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                    if (css != null) compiled++;
+                } catch (IOException e) {
+                    System.err.println(sample + ": " + e);
+                }
+            }
+        }
+
+        System.err.println("Training run compiled " + compiled + " samples");
+        return OK;
+    }
+
+    static Path toCssPath(Path input) {
+        String name = input.getFileName().toString();
+        if (name.endsWith(".icss")) {
+            name = name.substring(0, name.length() - ".icss".length());
+        }
+        return input.resolveSibling(name + ".css");
+    }
+}
@@ -0,0 +1,207 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.Pipeline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches directories for changed .icss files and recompiles them to a .css file next to the source.
+ *
+ * Editors often fire several events per save (truncate, write, rename...), so events are collected for a debounce window
+ * and every changed file is compiled once per burst on a background executor.
+ * The target .css is only rewritten when the generated bytes differ, so downstream asset watchers don't fire for nothing.
+ */
+public class WatchMode implements AutoCloseable {
+
+    private static final String SOURCE_EXTENSION = ".icss";
+
+    private final WatchService watchService;
+    private final long debounceMillis;
+    private final Consumer<String> log;
+
+    // Debounce timer and compile worker (single threads, so compiles of the same file never overlap)
+    private final ScheduledExecutorService debouncer = Executors.newSingleThreadScheduledExecutor(daemonThreads("icss-watch-debounce"));
+    private final ExecutorService compiler = Executors.newSingleThreadExecutor(daemonThreads("icss-watch-compile"));
+
+    // Files changed in the current burst, guarded by 'this'
+    private final Set<Path> pending = new LinkedHashSet<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private volatile boolean running = true;
+
+    public WatchMode(long debounceMillis, Consumer<String> log) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.debounceMillis = debounceMillis;
+        this.log = log;
+    }
+
+    /**
+     * Registers a directory (and its sub-directories) and compiles the .icss files that are already in there.
+     * @param root directory to watch
+     */
+    public void register(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isSource(file)) {
+                    changed(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Blocks and handles file events until {@link #close()} is called (or the thread is interrupted).
+     */
+    public void run() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    continue; // NOTE: Events got lost, but the next save of a file will trigger it again.
+                }
+
+                Path changed = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+                    try {
+                        register(changed);
+                    } catch (IOException e) {
+                        log.accept(changed + ": " + e);
+                    }
+                } else if (isSource(changed)) {
+                    changed(changed);
+                }
+            }
+            key.reset();
+        }
+    }
+
+    // Adds the file to the current burst and (re)starts the debounce window
+    private synchronized void changed(Path file) {
+        pending.add(file);
+
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = debouncer.schedule(this::flush, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Debounce window passed without new events, hand the burst over to the compiler
+    private void flush() {
+        Path[] burst;
+        synchronized (this) {
+            burst = pending.toArray(new Path[0]);
+            pending.clear();
+            scheduledFlush = null;
+        }
+
+        for (Path file : burst) {
+            compiler.execute(() -> compile(file));
+        }
+    }
+
+    private void compile(Path source) {
+        if (!Files.isRegularFile(source)) return; // Deleted or renamed during the debounce window
+
+        Path target = HeadlessMain.toCssPath(source);
+        try {
+            Pipeline pipeline = new Pipeline();
+            String css = pipeline.compile(Files.readString(source, StandardCharsets.UTF_8));
+
+            if (css == null) {
+                for (String error : pipeline.getErrors()) {
+                    log.accept(source + ": " + error);
+                }
+                return;
+            }
+
+            if (writeIfChanged(target, css.getBytes(StandardCharsets.UTF_8))) {
+                log.accept("Compiled " + source + " -> " + target);
+            }
+        } catch (IOException e) {
+            log.accept(source + ": " + e);
+        }
+    }
+
+    /**
+     * Writes the bytes to the target, unless the target already contains exactly these bytes.
+     * @return true when the file was (re)written
+     */
+    static boolean writeIfChanged(Path target, byte[] content) throws IOException {
+        if (Files.isRegularFile(target) && Files.size(target) == content.length
+                && Arrays.equals(Files.readAllBytes(target), content)) {
+            return false;
+        }
+        Files.write(target, content);
+        return true;
+    }
+
+    private static boolean isSource(Path file) {
+        return file.getFileName().toString().endsWith(SOURCE_EXTENSION);
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+        debouncer.shutdownNow();
+        compiler.shutdown();
+    }
+
+    /**
+     * Starts watching the given directories until the process is stopped.
+     * @param directories directories to watch
+     * @param debounceMillis debounce window in milliseconds
+     */
+    static int watch(List<Path> directories, long debounceMillis) {
+        try (WatchMode watchMode = new WatchMode(debounceMillis, System.err::println)) {
+            for (Path dir : directories) {
+                watchMode.register(dir);
+            }
+            System.err.println("Watching " + directories + " (Ctrl+C to stop)");
+            watchMode.run();
+        } catch (IOException e) {
+            System.err.println(e);
+            return HeadlessMain.COMPILE_ERRORS;
+        }
+        return HeadlessMain.OK;
+    }
+}
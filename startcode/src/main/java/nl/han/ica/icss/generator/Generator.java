@@ -1,50 +1,234 @@
 package nl.han.ica.icss.generator;
 
+import nl.han.ica.datastructures.BoundedHANQueue;
+import nl.han.ica.datastructures.HANStack;
 import nl.han.ica.icss.ast.*;
 import nl.han.ica.icss.ast.literals.*;
+import nl.han.ica.icss.ast.types.ExpressionType;
+import nl.han.ica.icss.metrics.events.StyleruleEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 public class Generator {
 
+	// Top-level rules don't depend on each other, so from this many on they are generated in parallel when there is an
+	// executor (can be overridden with -Dicss.generator.parallelThreshold=...)
+	private static final int PARALLEL_THRESHOLD = Integer.getInteger("icss.generator.parallelThreshold", 256);
+	// Top-level children per work item of the parallel version
+	private static final int CHUNK_SIZE = 32;
+
+	// Two hex digits for every byte (0x00 -> "00" ... 0xff -> "ff"), so a color is 3 lookups instead of String.format
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final char[] HEX_PAIRS = new char[256 * 2];
+	static {
+		for (int b = 0; b < 256; b++) {
+			HEX_PAIRS[b * 2] = HEX_DIGITS[b >> 4];
+			HEX_PAIRS[b * 2 + 1] = HEX_DIGITS[b & 0xF];
+		}
+	}
+
+	// Write '#rgb' instead of '#rrggbb' when possible, e.g. #ff0000 -> #f00 (default: -Dicss.generator.shortColors=...)
+	private boolean shortColors = Boolean.getBoolean("icss.generator.shortColors");
+
+	// Runs the helpers of the parallel version, none means everything is generated on the calling thread
+	private Executor executor;
+	private int helpers;
+
+	// Set when the thread that called generate is interrupted (or a helper failed), so the helpers stop as well
+	private volatile boolean cancelled;
+
+	public void setShortColors(boolean shortColors) {
+		this.shortColors = shortColors;
+	}
+
+	/**
+	 * Lets large stylesheets be generated by the calling thread plus at most 'helpers' tasks on the given executor.
+	 * The calling thread never waits for a helper that hasn't started, so a busy (or the caller's own) pool is fine.
+	 * @param executor runs the helpers, null to generate on the calling thread only
+	 * @param helpers max. amount of tasks handed to the executor per generate
+	 */
+	public void setExecutor(Executor executor, int helpers) {
+		this.executor = helpers > 0 ? executor : null;
+		this.helpers = helpers;
+	}
+
 	// Method to generate the CSS from AST
 	public String generate(AST ast) {
+		cancelled = false;
+		if (executor != null && ast.root != null && ast.root.body.size() >= PARALLEL_THRESHOLD) {
+			return generateParallel(ast.root);
+		}
+
 		StringBuilder sb = new StringBuilder();
 
 		generateNode(ast.root, sb, 0);
 		return sb.toString();
 	}
 
-	// Ident used for how much indentation to add before the rule. (Each ident corresponds to 2 spaces)
-	private void generateNode(ASTNode node, StringBuilder sb, int indentLevel) {
-		if (node == null) return;  // Guard
+	// Generates the children of the stylesheet (the first level of the tree) in chunks, each into its own buffer, then joins
+	// the buffers in source order, so the output is the same as the sequential version.
+	private String generateParallel(Stylesheet stylesheet) {
+		ParallelRun run = new ParallelRun(stylesheet.body);
 
-		String indent = "  ".repeat(indentLevel);  // Two spaces per indent
+		int tasks = Math.min(helpers, run.chunks - 1);
+		for (int i = 0; i < tasks; i++) {
+			try {
+				executor.execute(run::help);
+			} catch (RejectedExecutionException e) {
+				break; // Pool is shutting down (or full), the calling thread does the rest
+			}
+		}
+
+		try {
+			run.work();
+			run.awaitHelpers();
+		} catch (InterruptedException e) {
+			cancelled = true;
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Generate was interrupted");
+		} catch (RuntimeException e) {
+			cancelled = true; // Stops the helpers, nobody uses their output anymore
+			throw run.failure != null ? run.failure : e;
+		}
+		if (run.failure != null) {
+			throw run.failure;
+		}
 
-		if (node instanceof Stylerule) {
+		int length = 0;
+		for (String part : run.parts) {
+			length += part.length();
+		}
+		StringBuilder sb = new StringBuilder(length);
+		for (String part : run.parts) {
+			sb.append(part);
+		}
+		return sb.toString();
+	}
 
-			Stylerule rule = (Stylerule) node;
+	/*
+	 NOTE: Work-list of one parallel generate, the start index of every chunk is queued up front (bounded, it never grows)
+	 and taken by the calling thread and the helpers alike. 'running' counts the chunks that were taken but aren't done, so
+	 the calling thread only waits for work that is actually being done, not for helpers that are still in the pool's queue.
+	 */
+	private final class ParallelRun {
+		private final List<ASTNode> children;
+		private final String[] parts;
+		private final int chunks;
+		private final BoundedHANQueue<Integer> work;
+		private int running = 0;
+		private volatile RuntimeException failure;
 
-			// Handle Selectors
-			for (Selector selector : rule.selectors) {
-				sb.append(indent).append(selector.toString()).append(" {\n");
+		ParallelRun(List<ASTNode> children) {
+			this.children = children;
+			this.parts = new String[children.size()];
+			this.chunks = (children.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+			this.work = new BoundedHANQueue<>(chunks);
+			for (int start = 0; start < children.size(); start += CHUNK_SIZE) {
+				work.enqueue(start);
 			}
+		}
 
-			// Handle Declarations (e.g., width:, color:)
-			for (ASTNode child : rule.body) {
-				if (child instanceof Declaration) {
-					generateDeclaration((Declaration) child, sb, indentLevel + 1);
+		// Task on the executor, a failure is handed to the calling thread
+		void help() {
+			try {
+				work();
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					if (failure == null) failure = e;
 				}
+				cancelled = true; // After the failure is set, so the calling thread sees it when it stops
 			}
+		}
 
-			sb.append(indent).append("}\n");
+		void work() {
+			Integer start;
+			while ((start = take()) != null) {
+				try {
+					int end = Math.min(start + CHUNK_SIZE, children.size());
+					for (int i = start; i < end; i++) {
+						StringBuilder part = new StringBuilder();
+						generateNode(children.get(i), part, 0);
+						parts[i] = part.toString();
+					}
+				} finally {
+					done();
+				}
+			}
 		}
 
-		// Recurse
-		for (ASTNode child : node.getChildren()) {
+		private synchronized Integer take() {
+			if (cancelled) return null;
+			Integer start = work.dequeue();
+			if (start != null) running++;
+			return start;
+		}
 
-			if (child instanceof Declaration) {
-				continue;
+		private synchronized void done() {
+			if (--running == 0) notifyAll();
+		}
+
+		synchronized void awaitHelpers() throws InterruptedException {
+			while (running > 0) {
+				wait();
+			}
+		}
+	}
+
+	// Ident used for how much indentation to add before the rule. (Each ident corresponds to 2 spaces)
+	// NOTE: Walks the tree with an explicit stack (pre-order, same order as the recursive version had), so deep trees can't overflow.
+	private void generateNode(ASTNode root, StringBuilder sb, int indentLevel) {
+		String indent = "  ".repeat(indentLevel);  // Two spaces per indent
+
+		HANStack<ASTNode> stack = new HANStack<>();
+		stack.push(root);
+
+		while (!stack.isEmpty()) {
+			if (cancelled || Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("Generate was interrupted"); // Run was dropped (see Pipeline)
+			}
+			ASTNode node = stack.pop();
+			if (node == null) continue;  // Guard
+
+			if (node instanceof Stylerule) {
+
+				Stylerule rule = (Stylerule) node;
+				StyleruleEvent ruleEvent = StyleruleEvent.begin(StyleruleEvent.GENERATE, rule); // Time spent per rule (flight recording)
+
+				// Handle Selectors, a rule with more than one (e.g. merged by the OutputOptimizer) is a group: 'p, .menu {'
+				sb.append(indent);
+				for (int i = 0; i < rule.selectors.size(); i++) {
+					if (i > 0) {
+						sb.append(", ");
+					}
+					sb.append(rule.selectors.get(i).toString());
+				}
+				sb.append(" {\n");
+
+				// Handle Declarations (e.g., width:, color:)
+				for (ASTNode child : rule.body) {
+					if (child instanceof Declaration) {
+						generateDeclaration((Declaration) child, sb, indentLevel + 1);
+					}
+				}
+
+				sb.append(indent).append("}\n");
+				ruleEvent.commit();
+			}
+
+			// 'Recurse', children pushed in reverse so the first one comes off the stack first
+			List<ASTNode> children = node.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				ASTNode child = children.get(i);
+
+				if (child instanceof Declaration) {
+					continue;
+				}
+				stack.push(child);
 			}
-			generateNode(child, sb, indentLevel);
 		}
 	}
 
@@ -54,9 +238,29 @@ public class Generator {
 
 		sb.append(indent)
 				.append(decl.property.name) // Property Name
-				.append(": ")
-				.append(generateExpression(decl.expression))  // Property Value
-				.append(";\n");
+				.append(": ");
+		// Property Value
+		if (decl.expression instanceof Literal && decl.expression.getType() == ExpressionType.COLOR) {
+			appendColor(((ColorLiteral) decl.expression).value, sb);
+		} else {
+			sb.append(generateExpression(decl.expression));
+		}
+		sb.append(";\n");
+	}
+
+	// Appends a packed 0xRRGGBB color as '#rrggbb' (or '#rgb'), through the lookup table
+	private void appendColor(int rgb, StringBuilder sb) {
+		int red = (rgb >> 16) & 0xFF;
+		int green = (rgb >> 8) & 0xFF;
+		int blue = rgb & 0xFF;
+
+		sb.append('#');
+		// NOTE: Short form only when both digits of every channel are the same (#ff0000, not #fe0000)
+		if (shortColors && (rgb & 0x0F0F0F) == ((rgb >> 4) & 0x0F0F0F)) {
+			sb.append(HEX_DIGITS[red & 0xF]).append(HEX_DIGITS[green & 0xF]).append(HEX_DIGITS[blue & 0xF]);
+			return;
+		}
+		sb.append(HEX_PAIRS, red * 2, 2).append(HEX_PAIRS, green * 2, 2).append(HEX_PAIRS, blue * 2, 2);
 	}
 
 	// Convert Expression (From decl) to it's literal value.
@@ -67,23 +271,23 @@ public class Generator {
 		return "";
 	}
 
-	// Convert literals directly to correct String values
+	// Convert literals directly to correct String values (dispatched on the type of the literal)
 	private String generateLiteral(Literal literal) {
-		if (literal instanceof PixelLiteral) {
-			return ((PixelLiteral) literal).value + "px";
-		}
-		if (literal instanceof PercentageLiteral) {
-			return ((PercentageLiteral) literal).value + "%";
-		}
-		if (literal instanceof ScalarLiteral) {
-			return String.valueOf(((ScalarLiteral) literal).value);
-		}
-		if (literal instanceof ColorLiteral) {
-			return ((ColorLiteral) literal).value;
-		}
-		if (literal instanceof BoolLiteral) {
-			return String.valueOf(((BoolLiteral) literal).value);
+		switch (literal.getType()) {
+			case PIXEL:
+				return ((PixelLiteral) literal).value + "px";
+			case PERCENTAGE:
+				return ((PercentageLiteral) literal).value + "%";
+			case SCALAR:
+				return String.valueOf(((ScalarLiteral) literal).value);
+			case COLOR:
+				StringBuilder color = new StringBuilder(7);
+				appendColor(((ColorLiteral) literal).value, color);
+				return color.toString();
+			case BOOL:
+				return String.valueOf(((BoolLiteral) literal).value);
+			default:
+				return "ERROR (NO LITERAL FOUND)"; // Shouldn't happen... hopefully
 		}
-		return "ERROR (NO LITERAL FOUND)"; // Shouldn't happen... hopefully
 	}
 }
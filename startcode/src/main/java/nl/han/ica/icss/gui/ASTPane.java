@@ -6,12 +6,23 @@ import javafx.scene.control.TreeCell;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.layout.BorderPane;
+import nl.han.ica.datastructures.HANStack;
 import nl.han.ica.icss.ast.AST;
 import nl.han.ica.icss.ast.ASTNode;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 public class ASTPane extends BorderPane {
 
+    // Nodes deeper than this start collapsed (their tree items are only built when expanded), -Dicss.gui.astExpandDepth=...
+    private static final int DEFAULT_AUTO_EXPAND_DEPTH = Integer.getInteger("icss.gui.astExpandDepth", 4);
+    // Max. amount of tree items that get built by expanding by default, so huge sheets don't build the whole tree anyway
+    private static final int AUTO_EXPAND_BUDGET = Integer.getInteger("icss.gui.astExpandBudget", 2000);
+
     private TreeView<ASTNode> content;
+    private int autoExpandDepth = DEFAULT_AUTO_EXPAND_DEPTH;
     private Label title;
 
     public ASTPane () {
@@ -29,7 +40,8 @@ public class ASTPane extends BorderPane {
                 if(empty) {
                     setText("");
                 } else {
-                    setText(item.getNodeLabel());
+                    TreeItem<ASTNode> treeItem = getTreeItem();
+                    setText(treeItem instanceof ASTTreeItem ? ((ASTTreeItem) treeItem).getLabel() : item.getNodeLabel());
                     if(item.hasError()) {
                         getStyleClass().add("error");
                     }
@@ -48,16 +60,81 @@ public class ASTPane extends BorderPane {
      * @param ast
      */
     public void update(AST ast) {
-        content.setRoot(astNodeToTreeItem(ast.root));
+        ASTTreeItem.Context context = new ASTTreeItem.Context(autoExpandDepth, AUTO_EXPAND_BUDGET);
+        TreeItem<ASTNode> root = content.getRoot();
+
+        // Patch the changes into the current tree, so unchanged parts keep their items, expansion and scroll position
+        if (root instanceof ASTTreeItem && ((ASTTreeItem) root).canPatch(ast.root)) {
+            ((ASTTreeItem) root).patch(ast.root, context);
+            content.refresh(); // Error flags and labels of re-used items
+        } else {
+            content.setRoot(new ASTTreeItem(ast.root, 0, context));
+        }
     }
-    private TreeItem<ASTNode> astNodeToTreeItem(ASTNode astNode) {
 
-        TreeItem<ASTNode> tvNode = new TreeItem<ASTNode>(astNode);
-        tvNode.setExpanded(true);
+    /**
+     * Expands the tree up to the given node, selects it and scrolls it into view.
+     * @param node node of the AST that is currently shown
+     */
+    public void select(ASTNode node) {
+        TreeItem<ASTNode> item = content.getRoot();
+        if (item == null) return;
+
+        List<ASTNode> path = new ArrayList<>();
+        if (!findPath(item.getValue(), node, path)) return; // Not (or no longer) part of the shown AST
+
+        // path[0] is the root, walk down and expand (which builds the lazy children)
+        for (int i = 1; i < path.size() && item != null; i++) {
+            item.setExpanded(true);
+            TreeItem<ASTNode> next = null;
+            for (TreeItem<ASTNode> child : item.getChildren()) {
+                if (child.getValue() == path.get(i)) {
+                    next = child;
+                    break;
+                }
+            }
+            item = next;
+        }
 
-        for(ASTNode child : astNode.getChildren()) {
-            tvNode.getChildren().add(astNodeToTreeItem(child));
+        if (item != null) {
+            content.getSelectionModel().select(item);
+            content.scrollTo(content.getRow(item));
         }
-        return tvNode;
+    }
+
+    // Depth-first search for the node, fills path with root -> node
+    // NOTE: Explicit stack (one iterator over the children per node on the path), so a very deep AST can't overflow it.
+    private boolean findPath(ASTNode root, ASTNode target, List<ASTNode> path) {
+        path.add(root);
+        if (root == target) return true;
+
+        HANStack<Iterator<ASTNode>> stack = new HANStack<>();
+        stack.push(root.getChildren().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<ASTNode> children = stack.peek();
+            if (!children.hasNext()) { // Not below this node, back up
+                stack.pop();
+                path.remove(path.size() - 1);
+                continue;
+            }
+
+            ASTNode child = children.next();
+            path.add(child);
+            if (child == target) return true;
+            stack.push(child.getChildren().iterator());
+        }
+        return false;
+    }
+
+    public int getAutoExpandDepth() {
+        return autoExpandDepth;
+    }
+
+    /**
+     * Sets up to which depth nodes are expanded by default (root is depth 0), applies to the next update.
+     * @param autoExpandDepth depth, 0 shows only the (collapsed) root
+     */
+    public void setAutoExpandDepth(int autoExpandDepth) {
+        this.autoExpandDepth = autoExpandDepth;
     }
 }
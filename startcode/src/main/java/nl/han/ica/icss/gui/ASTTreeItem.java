@@ -0,0 +1,202 @@
+package nl.han.ica.icss.gui;
+
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+import nl.han.ica.icss.ast.ASTNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TreeItem that only creates the items for its children the first time they are asked for (when it gets expanded),
+ * instead of building the whole tree up-front.
+ * Items start expanded up to a given depth, as long as the auto-expand budget (max. amount of items) is not used up.
+ *
+ * Every item remembers the hash of its subtree as it was when the item was (last) built, so a new version of the AST
+ * can be patched into an existing tree with {@link #patch(ASTNode, Context)}: unchanged subtrees keep their items
+ * (and with that their expansion state), only the changed parts get new items.
+ */
+class ASTTreeItem extends TreeItem<ASTNode> {
+
+    /**
+     * Shared by all items built for one version of the AST.
+     */
+    static final class Context {
+        private final int autoExpandDepth;
+        private int autoExpandBudget;
+
+        Context(int autoExpandDepth, int autoExpandBudget) {
+            this.autoExpandDepth = autoExpandDepth;
+            this.autoExpandBudget = autoExpandBudget;
+        }
+
+        // Structural hash of the subtree (cached on the node itself, see ASTNode.structuralHash)
+        // NOTE: Errors aren't part of it, ASTPane refreshes the cells after patching so re-used items show the new errors
+        int hash(ASTNode node) {
+            return node.structuralHash();
+        }
+    }
+
+    private final int depth;
+    private Context context;
+    private boolean leaf;
+    private int hash;
+
+    private boolean childrenLoaded = false;
+    private String label; // Cached getNodeLabel(), some labels are built with string concatenation
+
+    ASTTreeItem(ASTNode node, int depth, Context context) {
+        super(node);
+        this.depth = depth;
+        this.context = context;
+        this.leaf = node.getChildren().isEmpty();
+        this.hash = context.hash(node);
+
+        if (!leaf && depth < context.autoExpandDepth && context.autoExpandBudget > 0) {
+            setExpanded(true);
+        }
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return leaf;
+    }
+
+    @Override
+    public ObservableList<TreeItem<ASTNode>> getChildren() {
+        ObservableList<TreeItem<ASTNode>> children = super.getChildren();
+
+        if (!childrenLoaded) {
+            childrenLoaded = true;
+
+            List<ASTNode> nodes = getValue().getChildren();
+            context.autoExpandBudget -= nodes.size();
+
+            List<TreeItem<ASTNode>> items = new ArrayList<>(nodes.size());
+            for (ASTNode child : nodes) {
+                items.add(new ASTTreeItem(child, depth + 1, context));
+            }
+            children.setAll(items);
+        }
+        return children;
+    }
+
+    String getLabel() {
+        if (label == null) {
+            label = getValue().getNodeLabel();
+        }
+        return label;
+    }
+
+    /**
+     * Checks if this item can be patched to show the given node (instead of replacing it).
+     */
+    boolean canPatch(ASTNode node) {
+        return getValue().getClass() == node.getClass();
+    }
+
+    /**
+     * Updates this item (and its loaded children) to show the new node, keeping the items of unchanged subtrees.
+     * @param node new version of the node this item shows, should be of the same type (see canPatch)
+     * @param newContext context of the new version of the AST
+     */
+    void patch(ASTNode node, Context newContext) {
+        int newHash = newContext.hash(node);
+
+        if (newHash == hash) {
+            rebind(node, newContext); // Same subtree, possibly other node instances (e.g. after a re-parse)
+            return;
+        }
+
+        setNode(node, newContext, newHash);
+        if (!childrenLoaded) {
+            return; // Children get built from the new node when expanded
+        }
+
+        List<TreeItem<ASTNode>> oldItems = new ArrayList<>(super.getChildren());
+        List<ASTNode> newNodes = node.getChildren();
+        List<TreeItem<ASTNode>> newItems = new ArrayList<>(newNodes.size());
+
+        // Unchanged prefix and suffix are matched by hash, so an inserted or removed node doesn't shift everything after it
+        int prefix = 0;
+        int maxCommon = Math.min(oldItems.size(), newNodes.size());
+        while (prefix < maxCommon && item(oldItems, prefix).hash == newContext.hash(newNodes.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxCommon - prefix
+                && item(oldItems, oldItems.size() - 1 - suffix).hash == newContext.hash(newNodes.get(newNodes.size() - 1 - suffix))) {
+            suffix++;
+        }
+
+        int oldSize = oldItems.size();
+        int newSize = newNodes.size();
+        for (int i = 0; i < newSize; i++) {
+            ASTNode newNode = newNodes.get(i);
+
+            int oldIndex;
+            if (i < prefix) {
+                oldIndex = i;
+            } else if (i >= newSize - suffix) {
+                oldIndex = oldSize - (newSize - i);
+            } else {
+                oldIndex = i < oldSize - suffix ? i : -1; // Changed part is paired by position
+            }
+
+            ASTTreeItem oldItem = oldIndex >= 0 ? item(oldItems, oldIndex) : null;
+            if (oldItem != null && oldItem.canPatch(newNode)) {
+                oldItem.patch(newNode, newContext);
+                newItems.add(oldItem);
+            } else {
+                newItems.add(new ASTTreeItem(newNode, depth + 1, newContext));
+            }
+        }
+
+        if (!sameItems(oldItems, newItems)) {
+            super.getChildren().setAll(newItems);
+        }
+    }
+
+    // Points this item and its loaded children to the new (structurally equal) nodes
+    private void rebind(ASTNode node, Context newContext) {
+        if (getValue() != node) {
+            setNode(node, newContext, newContext.hash(node));
+        } else {
+            context = newContext;
+        }
+
+        if (childrenLoaded) {
+            List<ASTNode> nodes = node.getChildren();
+            List<TreeItem<ASTNode>> items = super.getChildren();
+            if (items.size() != nodes.size()) { // Hash collision, rebuild these children when they're needed
+                childrenLoaded = false;
+                leaf = nodes.isEmpty();
+                items.clear();
+                return;
+            }
+            for (int i = 0; i < items.size(); i++) {
+                ((ASTTreeItem) items.get(i)).rebind(nodes.get(i), newContext);
+            }
+        }
+    }
+
+    private void setNode(ASTNode node, Context newContext, int newHash) {
+        context = newContext;
+        hash = newHash;
+        label = null;
+        leaf = node.getChildren().isEmpty();
+        setValue(node);
+    }
+
+    private static ASTTreeItem item(List<TreeItem<ASTNode>> items, int index) {
+        return (ASTTreeItem) items.get(index);
+    }
+
+    private static boolean sameItems(List<TreeItem<ASTNode>> a, List<TreeItem<ASTNode>> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+}
@@ -1,18 +1,164 @@
 package nl.han.ica.icss.gui;
 
-import javafx.scene.control.TextArea;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.BorderPane;
+import nl.han.ica.icss.ast.ASTNode;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Shows the pipeline messages and errors in a (virtualized) list.
+ *
+ * Lines are buffered and added to the list in one batch per pulse, instead of copying the whole text for every line.
+ * Only the first 'maxErrors' errors are kept, the summary shows how many there are in total.
+ * Clicking an error that belongs to an AST node passes that node to the node-selected handler.
+ */
 @SuppressWarnings("restriction")
-public class FeedbackPane extends TextArea {
+public class FeedbackPane extends BorderPane {
+
+	// Max. amount of error entries kept in the list, -Dicss.gui.maxErrors=...
+	private static final int DEFAULT_MAX_ERRORS = Integer.getInteger("icss.gui.maxErrors", 1000);
+
+	static final class Entry {
+		final String text;
+		final ASTNode node;
+		final boolean error;
+
+		Entry(String text, ASTNode node, boolean error) {
+			this.text = text;
+			this.node = node;
+			this.error = error;
+		}
+	}
+
+	private final ListView<Entry> list;
+	private final Label summary;
+
+	// Lines added since the last flush, guarded by 'this' (lines may come in from any thread)
+	private List<Entry> pending = new ArrayList<>();
+	private boolean flushScheduled = false;
+
+	private int maxErrors = DEFAULT_MAX_ERRORS;
+	private int errorCount = 0;
+	private int shownErrors = 0;
+
+	private Consumer<ASTNode> onNodeSelected = node -> { };
+
 	public FeedbackPane() {
 		super();
-		
-		setEditable(false);
+
+		list = new ListView<>();
+		list.setPrefHeight(150);
+		list.setCellFactory(listView -> new ListCell<Entry>() {
+			@Override
+			protected void updateItem(Entry entry, boolean empty) {
+				super.updateItem(entry, empty);
+
+				getStyleClass().removeAll("error");
+				if (empty || entry == null) {
+					setText(null);
+				} else {
+					setText(entry.text);
+					if (entry.error) {
+						getStyleClass().add("error");
+					}
+				}
+			}
+		});
+		list.getSelectionModel().selectedItemProperty().addListener((observable, oldEntry, entry) -> {
+			if (entry != null && entry.node != null) {
+				onNodeSelected.accept(entry.node);
+			}
+		});
+
+		summary = new Label();
+		summary.setPadding(new Insets(5, 0, 0, 0));
+
+		setCenter(list);
+		setBottom(summary);
 	}
-	public void clear() {
-		this.setText("");
+
+	// NOTE: Call on the FX thread (lines can be added from any thread)
+	public synchronized void clear() {
+		pending = new ArrayList<>();
+		errorCount = 0;
+		shownErrors = 0;
+
+		list.getItems().clear();
+		updateSummary();
 	}
+
+	/**
+	 * Adds a (status) message, these are always shown.
+	 */
 	public void addLine(String line) {
-		this.setText( this.getText() + "\n" + line);
+		add(new Entry(line, null, false));
+	}
+
+	/**
+	 * Adds an error, optionally linked to the AST node it belongs to.
+	 */
+	public void addError(String description, ASTNode node) {
+		add(new Entry(description, node, true));
+	}
+
+	private synchronized void add(Entry entry) {
+		if (entry.error) {
+			errorCount++;
+			if (shownErrors >= maxErrors) {
+				return; // Only counted, list is capped
+			}
+			shownErrors++;
+		}
+		pending.add(entry);
+
+		if (!flushScheduled) {
+			flushScheduled = true;
+			Platform.runLater(this::flush);
+		}
+	}
+
+	// Adds everything that came in since the last flush in one go (one list change, one layout pass)
+	private void flush() {
+		List<Entry> batch;
+		synchronized (this) {
+			batch = pending;
+			pending = new ArrayList<>();
+			flushScheduled = false;
+		}
+
+		list.getItems().addAll(batch);
+		updateSummary();
+	}
+
+	private synchronized void updateSummary() {
+		if (errorCount == 0) {
+			summary.setText("No errors");
+		} else if (errorCount > shownErrors) {
+			summary.setText(errorCount + " errors (showing the first " + shownErrors + ")");
+		} else {
+			summary.setText(errorCount + (errorCount == 1 ? " error" : " errors"));
+		}
+	}
+
+	public int getMaxErrors() {
+		return maxErrors;
+	}
+
+	public synchronized void setMaxErrors(int maxErrors) {
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * Called (on the FX thread) with the node of an error entry when the user clicks it.
+	 */
+	public void setOnNodeSelected(Consumer<ASTNode> onNodeSelected) {
+		this.onNodeSelected = onNodeSelected;
 	}
 }
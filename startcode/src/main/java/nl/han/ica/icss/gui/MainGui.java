@@ -2,6 +2,7 @@ package nl.han.ica.icss.gui;
 
 import com.google.common.io.Resources;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
@@ -13,14 +14,25 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.metrics.StageMetrics;
+import nl.han.ica.icss.parser.ParserPool;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 //We use this google library, because it makes life so much easier when
 //reading the examples icss files as packaged resource
@@ -31,6 +43,8 @@ public class MainGui extends Application {
     private final static String title = "ICSS Tool September 2020, version 1";
     //Example files (for menu)
     private final static List<String> examples = Arrays.asList("level0.icss","level1.icss","level2.icss","level3.icss");
+    //Typing pause before live mode recompiles
+    private final static long LIVE_DELAY_MILLIS = 400;
 
     //UI Components
     private InputPane inputPane;
@@ -44,14 +58,39 @@ public class MainGui extends Application {
     private Button transformButton;
     private Button generateButton;
 
+    //Live mode (recompile after a typing pause)
+    private CheckBox liveMode;
+    private PauseTransition liveDelay;
+
     //Model
     private Pipeline pipeline;
 
+    //Background execution of the pipeline stages (only touched from the FX thread)
+    private final ExecutorService pipelineExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "icss-pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> currentRun;
+    private long runGeneration;
+    private boolean running;
+
+    //Pipeline state as of the last finished run (the pipeline itself may be busy on the background thread)
+    private boolean parsed;
+    private boolean checked;
+
 
     @Override
     public void start(Stage stage) {
         //Setup pipeline
         pipeline = new Pipeline();
+        pipeline.setCollectMetrics(true);
+        pipeline.setGenerateExecutor(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+
+        //Prime the parser's DFA cache in the background, so the first parse isn't the slow one
+        Thread warmUp = new Thread(ParserPool::warmUp, "icss-parser-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
 
         //Setup UI
         stage.setTitle(title);
@@ -60,6 +99,7 @@ public class MainGui extends Application {
         astPane = new ASTPane();
         outputPane = new OutputPane();
         feedbackPane = new FeedbackPane();
+        feedbackPane.setOnNodeSelected(astPane::select);
 
         //Reference for the callbacks
         final MainGui me = this;
@@ -95,6 +135,21 @@ public class MainGui extends Application {
             }
         });
 
+        liveMode = new CheckBox("Live");
+        liveMode.setPadding(new Insets(4, 0, 0, 10));
+        liveDelay = new PauseTransition(Duration.millis(LIVE_DELAY_MILLIS));
+        liveDelay.setOnFinished(e -> me.compileLive());
+        liveMode.selectedProperty().addListener((observable, wasSelected, selected) -> {
+            if (selected) {
+                me.compileLive();
+            } else {
+                liveDelay.stop();
+            }
+        });
+
+        //Results of a run for older input are useless, drop them as soon as the text changes
+        inputPane.textProperty().addListener((observable, oldText, newText) -> me.inputChanged());
+
         //Create menus
         MenuBar menuBar = new MenuBar();
 
@@ -125,7 +180,7 @@ public class MainGui extends Application {
                         URL url = classLoader.getResource(level);
                         inputPane.setText(Resources.toString(url, Charset.defaultCharset()));
                     } catch (IOException ioe) {
-                        feedbackPane.addLine(ioe.toString());
+                        feedbackPane.addError(ioe.toString(), null);
                     }
                 }
             });
@@ -167,7 +222,7 @@ public class MainGui extends Application {
         //Toolbar
         HBox toolbar = new HBox();
         toolbar.setPadding(new Insets(5, 5, 5, 5));
-        toolbar.getChildren().addAll(new Label("Pipeline: "), parseButton, checkButton, transformButton, generateButton);
+        toolbar.getChildren().addAll(new Label("Pipeline: "), parseButton, checkButton, transformButton, generateButton, liveMode);
         updateToolbar();
 
         BorderPane bottom = new BorderPane();
@@ -188,65 +243,221 @@ public class MainGui extends Application {
 
     private void clear() {
         feedbackPane.clear();
-        pipeline.clearErrors();
+    }
+
+    /*
+     Runs a pipeline stage on the background executor, so the FX thread (and the editor) stays responsive.
+     The stage returns the UI update, which is only applied (with Platform.runLater) if no newer run or edit
+     came in the meantime. Stages run one at a time, so the pipeline is never used by two threads at once.
+     */
+    private void runStage(Callable<Runnable> stage) {
+        cancelStaleRun();
+        final long generation = runGeneration;
+        setRunning(true);
+
+        currentRun = pipelineExecutor.submit(() -> {
+            Runnable uiUpdate;
+            try {
+                uiUpdate = stage.call();
+            } catch (Exception e) {
+                uiUpdate = () -> feedbackPane.addError(e.toString(), null);
+            }
+
+            final Runnable update = uiUpdate;
+            Platform.runLater(() -> {
+                if (generation != runGeneration) return; // Input changed or a newer run started, drop the stale result
+                update.run();
+                setRunning(false);
+            });
+        });
+    }
+
+    // Invalidates the result of a run that is still busy (or queued) and interrupts it, the pipeline stops at its next check
+    private void cancelStaleRun() {
+        runGeneration++;
+        if (currentRun != null) {
+            currentRun.cancel(true);
+            currentRun = null;
+        }
+        setRunning(false);
+    }
+
+    private void setRunning(boolean running) {
+        this.running = running;
+        updateToolbar();
+    }
+
+    private void inputChanged() {
+        cancelStaleRun();
+
+        if (liveMode.isSelected()) {
+            liveDelay.playFromStart(); // Restart the typing pause
+        }
     }
 
     private void parse() {
         clear();
         feedbackPane.addLine("Parsing...");
-        pipeline.parseString(inputPane.getText());
-        for(String e : pipeline.getErrors()) {
-            feedbackPane.addLine(e);
-        }
-        if (pipeline.isParsed()) {
-            feedbackPane.addLine("Parsing succeeded");
-        }
-        astPane.update(pipeline.getAST());
-        updateToolbar();
+        String input = inputPane.getText();
+
+        runStage(() -> {
+            pipeline.clearErrors();
+            pipeline.parseString(input);
+
+            List<String> errors = new ArrayList<>(pipeline.getErrors());
+            boolean parsed = pipeline.isParsed();
+            AST ast = snapshot(pipeline.getAST());
+            String metrics = stageMetrics("parse");
+
+            return () -> {
+                for (String e : errors) {
+                    feedbackPane.addError(e, null);
+                }
+                if (parsed) {
+                    feedbackPane.addLine("Parsing succeeded");
+                }
+                feedbackPane.addLine(metrics);
+                astPane.update(ast);
+                setPipelineState(parsed, false);
+            };
+        });
     }
 
     private void check() {
         clear();
         feedbackPane.addLine("Checking...");
-        if (pipeline.check()) {
-            feedbackPane.addLine("AST is ok!");
-        } else {
-            for (String e : pipeline.getErrors()) {
-                feedbackPane.addLine(e);
-            }
-        }
-        astPane.update(pipeline.getAST());
-        updateToolbar();
+
+        runStage(() -> {
+            pipeline.clearErrors();
+            boolean checked = pipeline.check();
+
+            AST ast = snapshot(pipeline.getAST());
+            List<ASTNode> errorNodes = ast.getNodesWithErrors();
+            String metrics = stageMetrics("check");
+
+            return () -> {
+                if (checked) {
+                    feedbackPane.addLine("AST is ok!");
+                } else {
+                    for (ASTNode node : errorNodes) {
+                        feedbackPane.addError(node.getError().toString(), node);
+                    }
+                }
+                feedbackPane.addLine(metrics);
+                astPane.update(ast);
+                setPipelineState(true, checked);
+            };
+        });
     }
 
     private void transform() {
-       clear();
-       feedbackPane.addLine("Applying transformations...");
-       pipeline.transform();
-       if (pipeline.isTransformed()) {
-           feedbackPane.addLine("Transformation succeeded");
-       }
-       astPane.update(pipeline.getAST());
-       updateToolbar();
+        clear();
+        feedbackPane.addLine("Applying transformations...");
+
+        runStage(() -> {
+            pipeline.clearErrors();
+            pipeline.transform();
+
+            boolean transformed = pipeline.isTransformed();
+            AST ast = snapshot(pipeline.getAST());
+            String metrics = stageMetrics("transform");
+
+            return () -> {
+                if (transformed) {
+                    feedbackPane.addLine("Transformation succeeded");
+                }
+                feedbackPane.addLine(metrics);
+                astPane.update(ast);
+            };
+        });
     }
 
     private void generate() {
         clear();
         feedbackPane.addLine("Generating output...");
-        outputPane.setText(pipeline.generate());
-        feedbackPane.addLine("Generating succeeded");
+
+        runStage(() -> {
+            String css = pipeline.generate();
+            String metrics = stageMetrics("generate");
+
+            return () -> {
+                outputPane.setText(css);
+                feedbackPane.addLine("Generating succeeded");
+                feedbackPane.addLine(metrics);
+            };
+        });
+    }
+
+    // Live mode: all stages in one background run after a typing pause
+    private void compileLive() {
+        clear();
+        feedbackPane.addLine("Compiling...");
+        String input = inputPane.getText();
+
+        runStage(() -> {
+            pipeline.clearErrors();
+            String css = pipeline.compile(input);
+
+            List<String> errors = new ArrayList<>(pipeline.getErrors());
+            boolean parsed = pipeline.isParsed();
+            boolean checked = pipeline.isChecked();
+            AST ast = snapshot(pipeline.getAST());
+            List<ASTNode> errorNodes = parsed ? ast.getNodesWithErrors() : List.of();
+            String metrics = pipeline.getMetrics().toString().trim();
+
+            return () -> {
+                if (errorNodes.isEmpty()) {
+                    for (String e : errors) {
+                        feedbackPane.addError(e, null);
+                    }
+                }
+                for (ASTNode node : errorNodes) {
+                    feedbackPane.addError(node.getError().toString(), node);
+                }
+                if (css != null) {
+                    outputPane.setText(css);
+                    feedbackPane.addLine("Compiling succeeded");
+                }
+                for (String line : metrics.split("\n")) {
+                    feedbackPane.addLine(line);
+                }
+                astPane.update(ast);
+                setPipelineState(parsed, checked);
+            };
+        });
+    }
+
+    /*
+     Copy of the AST of a stage for the AST view (call on the pipeline thread, right after the stage).
+     The next stage changes the AST of the pipeline on the pipeline thread, while the view reads it on the FX thread (and
+     writes the cached hashes through structuralHash), so the view never gets the AST the pipeline keeps working on.
+     */
+    private static AST snapshot(AST ast) {
+        return ast == null ? null : ast.copy();
+    }
+
+    // Summary of the last run of a stage (call on the pipeline thread, right after the stage)
+    private String stageMetrics(String stage) {
+        StageMetrics metrics = pipeline.getMetrics().getStage(stage);
+        return metrics == null ? "" : metrics.toString();
+    }
+
+    private void setPipelineState(boolean parsed, boolean checked) {
+        this.parsed = parsed;
+        this.checked = checked;
         updateToolbar();
     }
 
     private void updateToolbar() {
         //Quick and ugly way...
+        parseButton.setDisable(running);
         checkButton.setDisable(true);
         transformButton.setDisable(true);
         generateButton.setDisable(true);
 
-        if (pipeline.isParsed()) {
+        if (parsed && !running) {
             checkButton.setDisable(false);
-            if (pipeline.isChecked()) {
+            if (checked) {
                 transformButton.setDisable(false);
                 generateButton.setDisable(false);
             }
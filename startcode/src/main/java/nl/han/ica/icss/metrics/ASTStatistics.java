@@ -0,0 +1,52 @@
+package nl.han.ica.icss.metrics;
+
+import nl.han.ica.datastructures.HANStack;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Declaration;
+import nl.han.ica.icss.ast.Stylerule;
+import nl.han.ica.icss.ast.VariableReference;
+
+/**
+ * Counts the nodes of an AST (one walk), used for the stage metrics.
+ */
+public class ASTStatistics {
+
+    private long nodes;
+    private long rules;
+    private long declarations;
+    private long variableReferences;
+
+    public static ASTStatistics of(ASTNode root) {
+        ASTStatistics statistics = new ASTStatistics();
+        if (root != null) statistics.count(root);
+        return statistics;
+    }
+
+    // Explicit stack instead of recursion, so very deep trees can't overflow
+    private void count(ASTNode root) {
+        HANStack<ASTNode> stack = new HANStack<>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            ASTNode node = stack.pop();
+            if (node == null) continue;
+
+            nodes++;
+            if (node instanceof Stylerule) rules++;
+            else if (node instanceof Declaration) declarations++;
+            else if (node instanceof VariableReference) variableReferences++;
+
+            for (ASTNode child : node.getChildren()) {
+                stack.push(child);
+            }
+        }
+    }
+
+    // Adds the counters to the metrics of a stage
+    public StageMetrics addTo(StageMetrics metrics) {
+        return metrics.count("astNodes", nodes)
+                .count("rules", rules)
+                .count("declarations", declarations)
+                .count("variableReferences", variableReferences);
+    }
+}
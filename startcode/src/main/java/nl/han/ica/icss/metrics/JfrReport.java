@@ -0,0 +1,95 @@
+package nl.han.ica.icss.metrics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Reads a flight recording with the ICSS events (see nl.han.ica.icss.metrics.events) and reports the time per stage
+ * and the slowest rules (total time per stage + selector, summed over all compiles in the recording).
+ */
+public class JfrReport {
+
+    private static final String EVENT_PREFIX = "nl.han.ica.icss.";
+    private static final String STYLERULE_EVENT = EVENT_PREFIX + "Stylerule";
+
+    // Totals of one rule (stage + selector) in the recording
+    static final class RuleTotal {
+        final String stage;
+        final String selector;
+        int declarations;
+        int ifClauses;
+        long count;
+        long totalNanos;
+        long maxNanos;
+
+        RuleTotal(String stage, String selector) {
+            this.stage = stage;
+            this.selector = selector;
+        }
+    }
+
+    private final Map<String, long[]> stageTotals = new LinkedHashMap<>(); // Event name -> {count, nanos}
+    private final Map<String, RuleTotal> ruleTotals = new HashMap<>();
+
+    public static JfrReport read(Path recording) throws IOException {
+        JfrReport report = new JfrReport();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                report.add(file.readEvent());
+            }
+        }
+        return report;
+    }
+
+    private void add(RecordedEvent event) {
+        String name = event.getEventType().getName();
+        if (!name.startsWith(EVENT_PREFIX)) return;
+
+        long nanos = event.getDuration().toNanos();
+
+        if (name.equals(STYLERULE_EVENT)) {
+            String stage = event.getString("stage");
+            String selector = event.getString("selector");
+
+            RuleTotal total = ruleTotals.computeIfAbsent(stage + '\0' + selector, key -> new RuleTotal(stage, selector));
+            total.declarations = event.getInt("declarations");
+            total.ifClauses = event.getInt("ifClauses");
+            total.count++;
+            total.totalNanos += nanos;
+            total.maxNanos = Math.max(total.maxNanos, nanos);
+        } else {
+            long[] total = stageTotals.computeIfAbsent(event.getEventType().getLabel(), key -> new long[2]);
+            total[0]++;
+            total[1] += nanos;
+        }
+    }
+
+    /**
+     * Rules sorted from slowest to fastest (total time).
+     */
+    List<RuleTotal> getSlowestRules(int limit) {
+        List<RuleTotal> rules = new ArrayList<>(ruleTotals.values());
+        rules.sort(Comparator.comparingLong((RuleTotal rule) -> rule.totalNanos).reversed());
+        return rules.subList(0, Math.min(limit, rules.size()));
+    }
+
+    public void print(PrintStream out, int top) {
+        out.println("Stages:");
+        for (Map.Entry<String, long[]> stage : stageTotals.entrySet()) {
+            out.printf("  %-14s %6d x %12.3f ms%n", stage.getKey(), stage.getValue()[0], stage.getValue()[1] / 1e6);
+        }
+
+        out.println();
+        out.println("Slowest rules (top " + top + " of " + ruleTotals.size() + "):");
+        out.printf("  %12s %12s %6s %-9s %5s %5s  %s%n", "total ms", "max ms", "count", "stage", "decl", "if", "selector");
+        for (RuleTotal rule : getSlowestRules(top)) {
+            out.printf("  %12.3f %12.3f %6d %-9s %5d %5d  %s%n", rule.totalNanos / 1e6, rule.maxNanos / 1e6, rule.count,
+                    rule.stage, rule.declarations, rule.ifClauses, rule.selector);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package nl.han.ica.icss.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Metrics of the stages a pipeline ran, in the order they ran.
+ */
+public class PipelineMetrics {
+
+    private final List<StageMetrics> stages = new ArrayList<>();
+
+    public void add(StageMetrics stage) {
+        stages.add(stage);
+    }
+
+    public void clear() {
+        stages.clear();
+    }
+
+    public List<StageMetrics> getStages() {
+        return stages;
+    }
+
+    /**
+     * Last metrics of the given stage.
+     * @param stage name of the stage, e.g. "parse"
+     * @return the metrics, or null when the stage did not run
+     */
+    public StageMetrics getStage(String stage) {
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            if (stages.get(i).getStage().equals(stage)) {
+                return stages.get(i);
+            }
+        }
+        return null;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"stages\":[");
+        for (int i = 0; i < stages.size(); i++) {
+            if (i > 0) sb.append(',');
+            stages.get(i).appendJson(sb);
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Appends a JSON string (with quotes): quotes and backslashes are escaped, control characters (below 0x20) become
+     * a unicode escape (e.g. a tab in a file name), so the result is always valid JSON.
+     * @param sb where to append it
+     * @param value the text to write as a JSON string
+     */
+    public static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (StageMetrics stage : stages) {
+            sb.append(stage).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package nl.han.ica.icss.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timings and counters of a single pipeline stage (parse, check, transform or generate).
+ *
+ * Use {@link #start(String)} before the stage and {@link #stop()} after it, both on the thread that runs the stage
+ * (CPU time and allocated bytes are per thread).
+ */
+public class StageMetrics {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    // Allocated bytes per thread is a HotSpot extension of the ThreadMXBean, not available on every JVM
+    private static final com.sun.management.ThreadMXBean HOTSPOT_THREADS =
+            THREADS instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) THREADS : null;
+
+    private final String stage;
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    private long wallNanos;
+    private long cpuNanos = -1;
+    private long allocatedBytes = -1;
+
+    // Values at start(), replaced by the totals at stop()
+    private long startWall;
+    private long startCpu;
+    private long startAllocated;
+
+    private StageMetrics(String stage) {
+        this.stage = stage;
+    }
+
+    public static StageMetrics start(String stage) {
+        StageMetrics metrics = new StageMetrics(stage);
+        metrics.startAllocated = allocatedBytes();
+        metrics.startCpu = cpuTime();
+        metrics.startWall = System.nanoTime();
+        return metrics;
+    }
+
+    public StageMetrics stop() {
+        wallNanos = System.nanoTime() - startWall;
+
+        long cpu = cpuTime();
+        if (cpu >= 0 && startCpu >= 0) cpuNanos = cpu - startCpu;
+
+        long allocated = allocatedBytes();
+        if (allocated >= 0 && startAllocated >= 0) allocatedBytes = allocated - startAllocated;
+
+        return this;
+    }
+
+    public StageMetrics count(String counter, long value) {
+        counters.put(counter, value);
+        return this;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+    public long getWallNanos() {
+        return wallNanos;
+    }
+    // -1 when not supported by the JVM
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+    // -1 when not supported by the JVM
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        if (HOTSPOT_THREADS == null || !HOTSPOT_THREADS.isThreadAllocatedMemorySupported()) return -1;
+        return HOTSPOT_THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    void appendJson(StringBuilder sb) {
+        sb.append("{\"stage\":");
+        PipelineMetrics.appendJsonString(sb, stage);
+        sb.append(",\"wallNanos\":").append(wallNanos)
+                .append(",\"cpuNanos\":").append(cpuNanos)
+                .append(",\"allocatedBytes\":").append(allocatedBytes);
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            sb.append(',');
+            PipelineMetrics.appendJsonString(sb, counter.getKey());
+            sb.append(':').append(counter.getValue());
+        }
+        sb.append('}');
+    }
+
+    // Single line summary, e.g. for the feedback pane in the GUI
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(stage).append(": ").append(String.format("%.2f ms", wallNanos / 1e6));
+        if (cpuNanos >= 0) sb.append(String.format(", cpu %.2f ms", cpuNanos / 1e6));
+        if (allocatedBytes >= 0) sb.append(String.format(", %.1f KB allocated", allocatedBytes / 1024.0));
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            sb.append(", ").append(counter.getKey()).append(' ').append(counter.getValue());
+        }
+        return sb.toString();
+    }
+}
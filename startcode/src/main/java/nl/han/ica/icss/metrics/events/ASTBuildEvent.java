@@ -0,0 +1,11 @@
+package nl.han.ica.icss.metrics.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.han.ica.icss.ASTBuild")
+@Label("AST Building")
+@Description("Walking the parse tree with the ASTListener")
+public class ASTBuildEvent extends StageEvent {
+}
@@ -0,0 +1,11 @@
+package nl.han.ica.icss.metrics.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.han.ica.icss.Check")
+@Label("Checking")
+@Description("Semantic checks (Checker)")
+public class CheckEvent extends StageEvent {
+}
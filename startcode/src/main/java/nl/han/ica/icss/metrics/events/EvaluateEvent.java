@@ -0,0 +1,11 @@
+package nl.han.ica.icss.metrics.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.han.ica.icss.Evaluate")
+@Label("Evaluating")
+@Description("Transformations (Evaluator)")
+public class EvaluateEvent extends StageEvent {
+}
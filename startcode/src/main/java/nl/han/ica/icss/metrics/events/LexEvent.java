@@ -0,0 +1,14 @@
+package nl.han.ica.icss.metrics.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.han.ica.icss.Lex")
+@Label("Lexing")
+@Description("Tokenizing the input (ICSSLexer)")
+public class LexEvent extends StageEvent {
+
+    @Label("Input Characters")
+    public int inputChars;
+}
@@ -0,0 +1,14 @@
+package nl.han.ica.icss.metrics.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.han.ica.icss.Parse")
+@Label("Parsing")
+@Description("Building the parse tree (ICSSParser)")
+public class ParseEvent extends StageEvent {
+
+    @Label("Input Characters")
+    public int inputChars;
+}
@@ -0,0 +1,14 @@
+package nl.han.ica.icss.metrics.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the Java Flight Recorder events for the compiler stages, emitted by the Pipeline.
+ * Record with e.g. '-XX:StartFlightRecording=filename=icss.jfr' and inspect with 'icssc --jfr-report icss.jfr'.
+ */
+@Category({"ICSS", "Stages"})
+@StackTrace(false)
+public abstract class StageEvent extends Event {
+}
@@ -0,0 +1,89 @@
+package nl.han.ica.icss.metrics.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import nl.han.ica.datastructures.HANStack;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Declaration;
+import nl.han.ica.icss.ast.IfClause;
+import nl.han.ica.icss.ast.Selector;
+import nl.han.ica.icss.ast.Stylerule;
+
+/**
+ * Time spent on a single Stylerule in one of the stages, so the slow rules in a big sheet can be found from a recording.
+ */
+@Name("nl.han.ica.icss.Stylerule")
+@Label("Stylerule")
+@Description("Checking, evaluating or generating a single Stylerule")
+@Category({"ICSS", "Rules"})
+@StackTrace(false)
+public class StyleruleEvent extends Event {
+
+    public static final String CHECK = "check";
+    public static final String EVALUATE = "evaluate";
+    public static final String GENERATE = "generate";
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Selector")
+    public String selector;
+
+    @Label("Declarations")
+    @Description("Declarations in the rule, including the ones in if/else clauses")
+    public int declarations;
+
+    @Label("If Clauses")
+    public int ifClauses;
+
+    /**
+     * Starts timing a rule, the rule is only inspected when the event is enabled in the running recording.
+     * @param stage one of CHECK, EVALUATE or GENERATE
+     * @param rule the rule
+     * @return the started event, call commit() on it when the rule is done
+     */
+    public static StyleruleEvent begin(String stage, Stylerule rule) {
+        StyleruleEvent event = new StyleruleEvent();
+        if (event.isEnabled()) {
+            event.stage = stage;
+            event.selector = selectorText(rule);
+            event.countBody(rule.body);
+        }
+        event.begin();
+        return event;
+    }
+
+    private static String selectorText(Stylerule rule) {
+        StringBuilder sb = new StringBuilder();
+        for (Selector selector : rule.selectors) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(selector);
+        }
+        return sb.toString();
+    }
+
+    // NOTE: Explicit stack of bodies still to count, so deeply nested if/else clauses can't overflow the stack.
+    private void countBody(Iterable<ASTNode> body) {
+        HANStack<Iterable<ASTNode>> bodies = new HANStack<>();
+        bodies.push(body);
+
+        while (!bodies.isEmpty()) {
+            for (ASTNode node : bodies.pop()) {
+                if (node instanceof Declaration) {
+                    declarations++;
+                } else if (node instanceof IfClause) {
+                    IfClause ifClause = (IfClause) node;
+                    ifClauses++;
+                    bodies.push(ifClause.body);
+                    if (ifClause.elseClause != null) {
+                        bodies.push(ifClause.elseClause.body);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -9,20 +9,41 @@
 	import nl.han.ica.icss.ast.selectors.ClassSelector;
 	import nl.han.ica.icss.ast.selectors.IdSelector;
 	import nl.han.ica.icss.ast.selectors.TagSelector;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.TerminalNode;
 
 	/**
 	 * This class extracts the ICSS Abstract Syntax Tree from the Antlr Parse tree.
 	 */
 	public class ASTListener extends ICSSBaseListener {
 
+		//Value decodeNumber returns for a number that doesn't fit in an int (can't be a real value, those are never negative)
+		private static final int NUMBER_TOO_LARGE = -1;
+
 		//Accumulator attributes:
 		private final AST ast;
 
 		//Use this to keep track of the parent nodes when recursively traversing the ast
 		private final HANStack<ASTNode> currentContainer;
 
+		//Names are interned into the symbol table of the AST
+		private final SymbolTable symbols;
+
+		//The text that is parsed (null when unknown), so names can be interned without 'getText()' creating a String per token
+		private final CharSequence source;
+
 		public ASTListener() {
+			this(null);
+		}
+
+		/**
+		 * @param source the exact text the parser reads. Token indexes are code point indexes, so a source with surrogate pairs
+		 *               (e.g. an emoji somewhere) is ignored and the names are read with 'getText()' instead.
+		 */
+		public ASTListener(CharSequence source) {
 			ast = new AST();
+			symbols = ast.symbols;
+			this.source = source != null && hasNoSurrogates(source) ? source : null;
 
 			currentContainer = new HANStack<>();
 		}
@@ -48,16 +69,17 @@
 
 			if (ctx.LOWER_IDENT() != null) {
 
-				String selectorString = ctx.LOWER_IDENT().getText();
+				int symbol = intern(ctx.LOWER_IDENT());
+				String selectorString = symbols.getName(symbol);
 				Selector selector;
 
                 // Check for selector type
 				if (selectorString.startsWith("#")) {
-					selector = new IdSelector(selectorString);
+					selector = new IdSelector(selectorString, symbol);
 				} else if (selectorString.startsWith(".")) {
-					selector = new ClassSelector(selectorString);
+					selector = new ClassSelector(selectorString, symbol);
 				} else {
-					selector = new TagSelector(selectorString);
+					selector = new TagSelector(selectorString, symbol);
 				}
 
 				stylerule.addChild(selector);
@@ -72,19 +94,21 @@
 
 		@Override
 		public void enterPropertyexpr(ICSSParser.PropertyexprContext ctx) {
-			String propertyName = null;
+			TerminalNode propertyToken = null;
 
 			if (ctx.COLOR_PROPERTY() != null) {
-				propertyName = ctx.COLOR_PROPERTY().getText();
+				propertyToken = ctx.COLOR_PROPERTY();
 			} else if (ctx.DIM_PROPERTY() != null) {
-				propertyName = ctx.DIM_PROPERTY().getText();
+				propertyToken = ctx.DIM_PROPERTY();
 			}
 
-			if(propertyName == null) { // NOTE: This should NOT happen, but adding a check to prevent application from entering a bad state.
+			if(propertyToken == null) { // NOTE: This should NOT happen, but adding a check to prevent application from entering a bad state.
 				throw new IllegalStateException("propertyName from a PropertyExpression is NULL");
 			}
 
-			Declaration declaration = new Declaration(propertyName);
+			int symbol = intern(propertyToken);
+			Declaration declaration = new Declaration();
+			declaration.addChild(new PropertyName(symbols.getName(symbol), symbol));
 			currentContainer.push(declaration);
 		}
 
@@ -99,9 +123,9 @@
 			ASTNode value = null;
 
 			if (ctx.HEXVAL() != null) {
-				value = new ColorLiteral(ctx.HEXVAL().getText());
+				value = new ColorLiteral(decodeColor(ctx.HEXVAL()));
 			} else if (ctx.CAPITAL_IDENT() != null) {
-				value = new VariableReference(ctx.CAPITAL_IDENT().getText());
+				value = variableReference(ctx.CAPITAL_IDENT());
 			}
 
 			currentContainer.push(value);
@@ -120,7 +144,7 @@
 			currentContainer.push(variableAssignment);
 
 			// NOTE: Uhh was it intended to set the reference under an assignment? Seems redundant.
-			VariableReference varRef = new VariableReference(ctx.CAPITAL_IDENT().getText());
+			VariableReference varRef = variableReference(ctx.CAPITAL_IDENT());
 			variableAssignment.addChild(varRef);
 
 			/*
@@ -149,7 +173,7 @@
 
 			// Parse either a Variable or a Boolean value.
 			if (ctx.CAPITAL_IDENT() != null) {
-				ifClause.addChild(new VariableReference(ctx.CAPITAL_IDENT().getText()));
+				ifClause.addChild(variableReference(ctx.CAPITAL_IDENT()));
 			} else if (ctx.BOOLEAN() != null) {
 				ifClause.addChild(new BoolLiteral(ctx.BOOLEAN().getText()));
 			}
@@ -217,19 +241,93 @@
 		private ASTNode buildLiteralFromContext(ICSSParser.FactorContext ctx) {
 			if (ctx == null) return null;
 
-			if (ctx.PIXELSIZE() != null) {
-				return new PixelLiteral(ctx.PIXELSIZE().getText());
-			} else if (ctx.PERCENTAGE() != null) {
-				return new PercentageLiteral(ctx.PERCENTAGE().getText());
-			} else if (ctx.SCALAR() != null) {
-				return new ScalarLiteral(ctx.SCALAR().getText());
+			TerminalNode number;
+			if ((number = ctx.PIXELSIZE()) != null) {
+				int value = decodeNumber(number, 2); // 'px'
+				return checkNumber(new PixelLiteral(value), value, number);
+			} else if ((number = ctx.PERCENTAGE()) != null) {
+				int value = decodeNumber(number, 1); // '%'
+				return checkNumber(new PercentageLiteral(value), value, number);
+			} else if ((number = ctx.SCALAR()) != null) {
+				int value = decodeNumber(number, 0);
+				return checkNumber(new ScalarLiteral(value), value, number);
+			} else if (ctx.HEXVAL() != null) {
+				return new ColorLiteral(decodeColor(ctx.HEXVAL()));
 			} else if (ctx.CAPITAL_IDENT() != null) {
-				return new VariableReference(ctx.CAPITAL_IDENT().getText());
+				return variableReference(ctx.CAPITAL_IDENT());
 			}
 
 			return null;
 		}
 
+		/*
+		 Value of the digits of a number token (the token without its suffix), decoded straight from the source characters,
+		 so there's no 'getText()' + 'substring' + 'Integer.parseInt' per number.
+		 NOTE: The lexer only lets digits through, so the only thing that can go wrong is a number that doesn't fit in an int.
+		 That returns NUMBER_TOO_LARGE, see checkNumber.
+		 */
+		private int decodeNumber(TerminalNode node, int suffixLength) {
+			Token token = node.getSymbol();
+			CharSequence text = source;
+			int start = token.getStartIndex();
+			int end = token.getStopIndex() + 1 - suffixLength;
+
+			if (source == null || token.getStopIndex() >= source.length()) {
+				text = token.getText();
+				start = 0;
+				end = text.length() - suffixLength;
+			}
+
+			int value = 0;
+			for (int i = start; i < end; i++) {
+				int digit = text.charAt(i) - '0';
+				if (value > (Integer.MAX_VALUE - digit) / 10) {
+					return NUMBER_TOO_LARGE;
+				}
+				value = value * 10 + digit;
+			}
+			return value;
+		}
+
+		// Packed 0xRRGGBB of a HEXVAL token, also straight from the source (the lexer only lets valid '#rrggbb' through)
+		private int decodeColor(TerminalNode node) {
+			Token token = node.getSymbol();
+			if (source == null || token.getStopIndex() >= source.length()) {
+				String text = token.getText();
+				return ColorLiteral.parse(text, 0, text.length());
+			}
+			return ColorLiteral.parse(source, token.getStartIndex(), token.getStopIndex() + 1);
+		}
+
+		// A number that is too large is a semantic error on the literal (reported by the checker), instead of a crash
+		private static Literal checkNumber(Literal literal, int value, TerminalNode number) {
+			if (value == NUMBER_TOO_LARGE) {
+				literal.setError("Number '" + number.getText() + "' is too large, the maximum is " + Integer.MAX_VALUE + ".");
+			}
+			return literal;
+		}
+
+		private VariableReference variableReference(TerminalNode name) {
+			int symbol = intern(name);
+			return new VariableReference(symbols.getName(symbol), symbol);
+		}
+
+		// Interns the name straight from the source characters of the token, only the first occurrence of a name becomes a String.
+		private int intern(TerminalNode node) {
+			Token token = node.getSymbol();
+			if (source == null || token.getStopIndex() >= source.length()) {
+				return symbols.intern(token.getText());
+			}
+			return symbols.intern(source, token.getStartIndex(), token.getStopIndex() + 1);
+		}
+
+		private static boolean hasNoSurrogates(CharSequence text) {
+			for (int i = 0; i < text.length(); i++) {
+				if (Character.isSurrogate(text.charAt(i))) return false;
+			}
+			return true;
+		}
+
 		// Using a separate function to centralize this code.
 		// I won't do specific typecasting for the type of node, but can be done with if-instanceof checks, but adding it as is, should work fine.
 		private void attachLatestOnStackToParent() {
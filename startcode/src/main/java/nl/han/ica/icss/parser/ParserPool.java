@@ -0,0 +1,172 @@
+package nl.han.ica.icss.parser;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Keeps one lexer/parser pair per thread so they can be re-used between parses (reset through 'setInputStream'),
+ * instead of building a new ICSSLexer, CommonTokenStream and ICSSParser for every call.
+ *
+ * The ATN/DFA cache ANTLR builds while parsing is shared (static) between all lexer/parser instances.
+ * It can be primed at startup with {@link #warmUp()} and flushed with {@link #clearDFACache()} once it gets too large.
+ */
+public final class ParserPool {
+
+    // Bundled samples used to prime the DFA cache (Same files as the example menu in the GUI)
+    private static final String[] WARM_UP_SAMPLES = {"level0.icss", "level1.icss", "level2.icss", "level3.icss"};
+
+    // Max. amount of DFA states (lexer + parser) before the cache is flushed, can be overridden with -Dicss.dfa.maxStates=...
+    private static volatile int maxDFAStates = Integer.getInteger("icss.dfa.maxStates", 100_000);
+
+    private static final ThreadLocal<ParserPool> POOL = ThreadLocal.withInitial(ParserPool::new);
+
+    private final ICSSLexer lexer;
+    private final CommonTokenStream tokens;
+    private final ICSSParser parser;
+
+    private ParserPool() {
+        lexer = new ICSSLexer(CharStreams.fromString(""));
+        tokens = new CommonTokenStream(lexer);
+        parser = new ICSSParser(tokens);
+        parser.addParseListener(STOP_WHEN_INTERRUPTED);
+    }
+
+    /**
+     * Resets the lexer & parser of the current thread to the given input and swaps in the error listener.
+     * @param input the (ICSS) input to lex and parse
+     * @param errorListener listener that receives the syntax errors of both the lexer and parser
+     * @return the parser of the current thread, ready to call 'stylesheet()' on
+     */
+    public static ICSSParser acquire(CharStream input, ANTLRErrorListener errorListener) {
+        ParserPool pooled = POOL.get();
+
+        pooled.lexer.setInputStream(input);
+        pooled.lexer.removeErrorListeners();
+        pooled.lexer.addErrorListener(errorListener);
+
+        pooled.tokens.setTokenSource(pooled.lexer); // Also drops the tokens from the previous parse
+        pooled.parser.setTokenStream(pooled.tokens); // Resets the parser state
+        pooled.parser.removeErrorListeners();
+        pooled.parser.addErrorListener(errorListener);
+
+        return pooled.parser;
+    }
+
+    /**
+     * Drops the references to the last input and error listener, so a pooled parser does not keep (large) inputs alive.
+     * Also flushes the DFA cache when it grew past the configured maximum.
+     */
+    public static void release() {
+        ParserPool pooled = POOL.get();
+
+        pooled.lexer.removeErrorListeners();
+        pooled.parser.removeErrorListeners();
+        pooled.lexer.setInputStream(CharStreams.fromString(""));
+        pooled.tokens.setTokenSource(pooled.lexer);
+        pooled.parser.setTokenStream(pooled.tokens);
+
+        clearDFACacheIfLargerThan(maxDFAStates);
+    }
+
+    /**
+     * Parses the bundled sample sheets once, so the shared DFA cache is filled before the first real request comes in.
+     * @return number of samples that were parsed
+     */
+    public static int warmUp() {
+        int parsed = 0;
+        ClassLoader classLoader = ParserPool.class.getClassLoader();
+
+        for (String sample : WARM_UP_SAMPLES) {
+            try (InputStream in = classLoader.getResourceAsStream(sample)) {
+                if (in == null) continue; // Sample not bundled, nothing to prime with
+
+                ICSSParser parser = acquire(CharStreams.fromStream(in), new BaseErrorListener());
+                parser.stylesheet();
+                parsed++;
+            } catch (IOException | ParseCancellationException e) {
+                // NOTE: Warm-up is best-effort, a broken sample should not prevent the application from starting.
+            } finally {
+                release();
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Counts the states in the shared lexer and parser DFA cache.
+     * @return total amount of cached DFA states
+     */
+    public static int getDFACacheSize() {
+        ParserPool pooled = POOL.get();
+        return countStates(pooled.lexer.getInterpreter().decisionToDFA)
+                + countStates(pooled.parser.getInterpreter().decisionToDFA);
+    }
+
+    /**
+     * Flushes the shared lexer and parser DFA cache (For all threads, the cache is static).
+     */
+    public static void clearDFACache() {
+        ParserPool pooled = POOL.get();
+        pooled.lexer.getInterpreter().clearDFA();
+        pooled.parser.getInterpreter().clearDFA();
+    }
+
+    /**
+     * Flushes the DFA cache, but only when it holds more than the given amount of states.
+     * @param maxStates the max. amount of states to keep around
+     * @return true when the cache was flushed
+     */
+    public static boolean clearDFACacheIfLargerThan(int maxStates) {
+        if (getDFACacheSize() <= maxStates) return false;
+
+        clearDFACache();
+        return true;
+    }
+
+    public static int getMaxDFAStates() {
+        return maxDFAStates;
+    }
+
+    public static void setMaxDFAStates(int maxStates) {
+        maxDFAStates = maxStates;
+    }
+
+    private static int countStates(DFA[] decisionToDFA) {
+        int count = 0;
+        for (DFA dfa : decisionToDFA) {
+            count += dfa.states.size();
+        }
+        return count;
+    }
+
+    // NOTE: Called for every parsed rule. Stops the parse of a thread that got interrupted (e.g. the GUI dropped the run)
+    // instead of parsing a large input to the end for nothing.
+    private static final ParseTreeListener STOP_WHEN_INTERRUPTED = new ParseTreeListener() {
+        @Override
+        public void exitEveryRule(ParserRuleContext ctx) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Parse was interrupted");
+            }
+        }
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) { }
+        @Override
+        public void visitTerminal(TerminalNode node) { }
+        @Override
+        public void visitErrorNode(ErrorNode node) { }
+    };
+}
@@ -0,0 +1,58 @@
+package nl.han.ica.icss.parser;
+
+import nl.han.ica.icss.ast.SymbolTable;
+import nl.han.ica.icss.ast.types.PropertySchema;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * Gives a LOWER_IDENT the token type of the property it names (COLOR_PROPERTY or DIM_PROPERTY), used by the ICSSLexer.
+ *
+ * The name is looked up in the PropertySchema straight from the characters the lexer just read, this object is a
+ * (re-used) CharSequence view on them, so there's no 'getText()' String per identifier.
+ */
+final class PropertyTokens implements CharSequence {
+
+    private final Lexer lexer;
+
+    PropertyTokens(Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    // Token type for the identifier the lexer just matched (the property types only exist in the parser, see tokens{} in the grammar)
+    int typeOfCurrentToken() {
+        PropertySchema schema = PropertySchema.get();
+        int property = schema.lookup(this, lexer._tokenStartCharIndex, lexer.getCharIndex());
+
+        if (property == SymbolTable.NO_SYMBOL) return ICSSParser.LOWER_IDENT;
+        return schema.isColorProperty(property) ? ICSSParser.COLOR_PROPERTY : ICSSParser.DIM_PROPERTY;
+    }
+
+    // NOTE: Only valid for characters the lexer already consumed (LA with a negative offset looks back).
+    // LOWER_IDENTs are plain ASCII, so a code point always fits in a char here.
+    @Override
+    public char charAt(int index) {
+        CharStream input = lexer.getInputStream();
+        return (char) input.LA(index - input.index());
+    }
+
+    @Override
+    public int length() {
+        return lexer.getCharIndex();
+    }
+
+    // Not used for lookups (that's the point of this view), a String copy is fine here
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        return start == end ? "" : lexer.getInputStream().getText(Interval.of(start, end - 1));
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
@@ -0,0 +1,154 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.icss.ast.*;
+import nl.han.ica.icss.ast.literals.BoolLiteral;
+
+import java.util.ArrayList;
+
+/*
+ Optimization pass (hooks, see PassManager) for a checked AST, so the Evaluator only has to deal with what's really dynamic:
+ - A global variable that is assigned once with a constant (e.g. 'AdjustColor := TRUE;' or 'W := 10px * 2;') is a constant:
+   every reference to it is replaced by its value and the assignment itself is removed.
+ - Operations of which both sides are constant are replaced by their value (same math as the Evaluator).
+ - If-clauses with a constant condition are pruned: FALSE without else is removed, otherwise only the kept body stays,
+   as 'if [TRUE] { kept body }'. That keeps the scope of the body, so the slots the Resolver handed out stay valid.
+
+ NOTE:
+ - Needs the (scopeDepth, slot) of the Resolver, so the AST has to be checked (without errors) first.
+ - Globals can only be assigned at the top level (an assignment in a rule or if-body defines a new variable in that scope),
+   and the Checker makes sure they're assigned before they're used. The walk is post-order and in source order, so a
+   constant is known before anything after its assignment is visited.
+ */
+public class ConstantFolder implements Transform {
+
+    // Value per global slot, null when the global isn't (or not yet) a constant
+    private Literal[] constants;
+    // Amount of top-level assignments per global slot, only globals assigned once can be constants
+    private int[] assignments;
+
+    // For the pipeline metrics
+    private long foldedOperations = 0;
+    private long propagatedConstants = 0;
+    private long prunedBranches = 0;
+
+    @Override
+    public void apply(AST ast) {
+        PassManager passes = new PassManager().add(this);
+        passes.run(ast);
+    }
+
+    @Override
+    public boolean registerHooks(AST ast, TransformHooks hooks) {
+        countGlobalAssignments(ast);
+
+        hooks.on(Operation.class, this::foldOperation)
+                .on(Declaration.class, this::propagateInDeclaration)
+                .on(VariableAssignment.class, this::propagateInAssignment)
+                .on(IfClause.class, this::pruneIfClause);
+        return true;
+    }
+
+    public long getFoldedOperations() {
+        return foldedOperations;
+    }
+
+    public long getPropagatedConstants() {
+        return propagatedConstants;
+    }
+
+    public long getPrunedBranches() {
+        return prunedBranches;
+    }
+
+    private void countGlobalAssignments(AST ast) {
+        int slots = 0;
+        ArrayList<ASTNode> body = ast.root == null ? new ArrayList<>() : ast.root.body;
+
+        for (ASTNode statement : body) {
+            VariableReference name = globalName(statement);
+            if (name != null) slots = Math.max(slots, name.slot + 1);
+        }
+
+        assignments = new int[slots];
+        constants = new Literal[slots];
+        for (ASTNode statement : body) {
+            VariableReference name = globalName(statement);
+            if (name != null) assignments[name.slot]++;
+        }
+    }
+
+    // Name of a top-level assignment to a global, null for anything else
+    private static VariableReference globalName(ASTNode statement) {
+        if (!(statement instanceof VariableAssignment)) return null;
+
+        VariableReference name = ((VariableAssignment) statement).name;
+        return name != null && name.scopeDepth == 0 && name.slot >= 0 ? name : null;
+    }
+
+    // Both sides are already done (post-order), so nested constant operations fold bottom-up
+    private ASTNode foldOperation(Operation operation) {
+        operation.lhs = propagate(operation.lhs);
+        operation.rhs = propagate(operation.rhs);
+
+        if (operation.lhs instanceof Literal && operation.rhs instanceof Literal) {
+            Literal value = Evaluator.evaluateOperation(operation, (Literal) operation.lhs, (Literal) operation.rhs);
+            if (value != null) {
+                foldedOperations++;
+                return value;
+            }
+        }
+        return operation;
+    }
+
+    private ASTNode propagateInDeclaration(Declaration declaration) {
+        declaration.expression = propagate(declaration.expression);
+        return declaration;
+    }
+
+    private ASTNode propagateInAssignment(VariableAssignment assignment) {
+        assignment.expression = propagate(assignment.expression);
+
+        // A global that is assigned once with a constant: remember it, all references to it get its value
+        VariableReference name = globalName(assignment);
+        if (name != null && assignments[name.slot] == 1 && assignment.expression instanceof Literal) {
+            constants[name.slot] = (Literal) assignment.expression;
+            return null;
+        }
+        return assignment;
+    }
+
+    private ASTNode pruneIfClause(IfClause ifClause) {
+        ifClause.conditionalExpression = propagate(ifClause.conditionalExpression);
+        if (!(ifClause.conditionalExpression instanceof BoolLiteral)) return ifClause;
+
+        boolean condition = ((BoolLiteral) ifClause.conditionalExpression).value;
+        if (condition) {
+            if (ifClause.elseClause != null) { // Else-body can never be used
+                ifClause.elseClause = null;
+                prunedBranches++;
+            }
+            return ifClause;
+        }
+
+        prunedBranches++;
+        if (ifClause.elseClause == null) {
+            return null; // Nothing is kept
+        }
+        // NOTE: The else-body is a scope one deeper than the if-clause, same as an if-body, so it can take its place.
+        return new IfClause(new BoolLiteral(true), ifClause.elseClause.body);
+    }
+
+    // Value of a reference to a constant global (a copy, every place gets its own node), anything else stays as it is
+    private Expression propagate(Expression expression) {
+        if (!(expression instanceof VariableReference)) return expression;
+
+        VariableReference reference = (VariableReference) expression;
+        if (reference.scopeDepth != 0 || reference.slot < 0 || reference.slot >= constants.length) return expression;
+
+        Literal value = constants[reference.slot];
+        if (value == null) return expression;
+
+        propagatedConstants++;
+        return Evaluator.cloneLiteral(value);
+    }
+}
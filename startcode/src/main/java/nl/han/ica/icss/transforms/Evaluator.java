@@ -1,95 +1,200 @@
 package nl.han.ica.icss.transforms;
 
+import nl.han.ica.datastructures.HANIntStack;
+import nl.han.ica.datastructures.HANStack;
 import nl.han.ica.icss.ast.*;
 import nl.han.ica.icss.ast.literals.*;
 import nl.han.ica.icss.ast.operations.*;
+import nl.han.ica.icss.ast.types.ExpressionType;
+import nl.han.ica.icss.metrics.events.StyleruleEvent;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 /*
 
     NOTE:
     Tried to use the same flow as with the Checker, but deviated a bit from it. Current flow seems inefficient and isn't all to great in my opinion.
     Would ideally refactor the way it loops over everything; but it works, so it's fine for now.
+    -> Refactored: every body is now rewritten in one pass (see rewriteBody), instead of removing IfClauses from the parent
+       (ArrayList.remove, O(n) each) and adding the kept body at the end (which also changed the order of the declarations).
 
  */
 
 public class Evaluator implements Transform {
 
-    // NOTE: Scoping is not relevant in this step anymore as the Parser & Checker have made sure that there aren't any inconsistencies
-    private final HashMap<String, Literal> variableValues = new HashMap<>();
+    // Values of the variables per open scope, indexed by the (scopeDepth, slot) the Resolver (run by the Checker) gave every variable reference.
+    // frames[0] is the global scope, a Stylerule or a kept if/else-body opens the next one. Arrays are re-used between scopes.
+    private Literal[][] frames = new Literal[8][];
+    private int depth = -1;
+
+    // Amount of variable references that were replaced by their value (for the pipeline metrics)
+    private long resolvedVariables = 0;
 
     @Override
     public void apply(AST ast) {
         if (ast.root != null) {
-            evaluateNode(ast.root, null);
+            pushScope(); // Global scope
+            ast.root.body = rewriteBody(ast.root.body);
+            ast.root.invalidateHash(); // Fields are set directly, see ASTNode.structuralHash
+            popScope();
         }
     }
 
-    private void evaluateNode(ASTNode node, ASTNode parent) {
-        if (node == null) return; // Guard
-
-        // Handle IfClause replacement first
-        if (node instanceof IfClause) {
-
-            IfClause ifNode = (IfClause) node;
-            BoolLiteral condition = (BoolLiteral) evaluateExpression(ifNode.getConditionalExpression());
+    public long getResolvedVariables() {
+        return resolvedVariables;
+    }
 
-            if (condition == null) { // Should not happen, but doing this as condition.value below could throw a NullPointerException, so doing this for clarity.
-                throw new IllegalStateException("The Conditional of a IfClause is NULL whilst it should not be possible (In the Evaluator)");
+    /*
+     NOTE:
+     Rewrites a body (of the stylesheet or a Stylerule) into a new list in one linear pass, in source order:
+     - VariableAssignments are evaluated and dropped
+     - Declarations get their expression evaluated and are kept
+     - An IfClause is replaced by the body it keeps (if-body, else-body or nothing), spliced in at the same position. The kept body
+       is walked right away in its own scope, so nested IfClauses are spliced in the same pass.
+     Open kept bodies are kept on a stack of cursors instead of recursing, so deeply nested if-clauses can't overflow the call stack.
+     */
+    private ArrayList<ASTNode> rewriteBody(List<ASTNode> body) {
+        ArrayList<ASTNode> result = new ArrayList<>(body.size());
+        HANStack<Cursor> outer = new HANStack<>(); // Bodies that are waiting for a kept if/else-body to be done
+        Cursor cursor = new Cursor(body);
+
+        while (true) {
+            if (cursor.next == cursor.nodes.size()) {
+                if (outer.isEmpty()) break;
+
+                popScope(); // Kept body is done
+                cursor = outer.pop();
+                continue;
             }
 
-            // Temporarily store the nodes from the body to keep in here.
-            ArrayList<ASTNode> replacementNodes = new ArrayList<>();
-
-            if (condition.value) { // TRUE, so keep the body from the IfClause
-                replacementNodes.addAll(ifNode.body);
-            } else if (ifNode.getElseClause() != null) { // FALSE && ElseClause exists, so keep body of ElseClause
-                replacementNodes.addAll(ifNode.getElseClause().body);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Transform was interrupted"); // Run was dropped (see Pipeline)
             }
-            // FALSE && ElseClause does NOT exist, so we don't store any bodies.
+            ASTNode node = cursor.nodes.get(cursor.next++);
+
+            if (node instanceof VariableAssignment) {
+                assign((VariableAssignment) node);
 
-                // Remove IfClause
-                parent.removeChild(ifNode);
+            } else if (node instanceof IfClause) {
+                List<ASTNode> kept = selectBody((IfClause) node);
+                if (kept != null) {
+                    outer.push(cursor);
+                    cursor = new Cursor(kept);
+                    pushScope();
+                }
 
-                // Add remaining body's children to the parent of the IfClause, and check these bodies as well (in-case for nested if-else clauses)
-                for (ASTNode child : replacementNodes) {
-                    parent.addChild(child);
-                    evaluateNode(child, parent); // Recursively handle nested IfClauses
+            } else {
+                if (node instanceof Declaration) {
+                    Declaration decl = (Declaration) node;
+                    decl.expression = evaluateExpression(decl.expression);
+                    decl.invalidateHash();
+                } else if (node instanceof Stylerule) {
+                    evaluateRule((Stylerule) node);
                 }
-                 return;
+                result.add(node);
             }
+        }
+        return result;
+    }
+
+    private void evaluateRule(Stylerule rule) {
+        // Time spent per rule, for finding slow rules in a flight recording
+        StyleruleEvent ruleEvent = StyleruleEvent.begin(StyleruleEvent.EVALUATE, rule);
+
+        pushScope();
+        rule.body = rewriteBody(rule.body);
+        rule.invalidateHash();
+        popScope();
+
+        ruleEvent.commit();
+    }
 
+    // The body of the IfClause to keep, null when there's nothing to keep
+    private List<ASTNode> selectBody(IfClause ifNode) {
+        BoolLiteral condition = (BoolLiteral) evaluateExpression(ifNode.getConditionalExpression());
 
-        // Evaluate declarations
-        if (node instanceof Declaration) {
-            Declaration decl = (Declaration) node;
-            decl.expression = evaluateExpression(decl.expression);
+        if (condition == null) { // Should not happen, but doing this as condition.value below could throw a NullPointerException, so doing this for clarity.
+            throw new IllegalStateException("The Conditional of a IfClause is NULL whilst it should not be possible (In the Evaluator)");
         }
 
-        // Traverse AST (Bit diff than in Checker, could likely implement the same, but im just doing what I think is fine for now)
-        Iterator<ASTNode> it = node.getChildren().iterator();
-        while (it.hasNext()) {
-            ASTNode child = it.next();
+        if (condition.value) { // TRUE, so keep the body from the IfClause
+            return ifNode.body;
+        } else if (ifNode.getElseClause() != null) { // FALSE && ElseClause exists, so keep body of ElseClause
+            return ifNode.getElseClause().body;
+        }
+        return null; // FALSE && ElseClause does NOT exist, so we don't keep any bodies.
+    }
 
-            // Handle variable assignments and recurse
-            if (child instanceof VariableAssignment) {
-                VariableAssignment varAssign = (VariableAssignment) child;
-                Literal value = evaluateExpression(varAssign.expression);
-                variableValues.put(varAssign.name.name, value);
+    private void assign(VariableAssignment varAssign) {
+        Literal value = evaluateExpression(varAssign.expression);
 
-                // Remove the variable assignment node from the AST
-                it.remove();
-                continue;
-            }
-            // Recurse
-            evaluateNode(child, node);
+        VariableReference name = varAssign.name;
+        if (name == null || !name.isResolved()) return; // Guard (Resolver didn't run)
+
+        Literal[] frame = frames[name.scopeDepth];
+        if (name.slot >= frame.length) {
+            frame = frames[name.scopeDepth] = Arrays.copyOf(frame, Math.max(frame.length * 2, name.slot + 1));
+        }
+        frame[name.slot] = value;
+    }
+
+    private void pushScope() {
+        depth++;
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        if (frames[depth] == null) {
+            frames[depth] = new Literal[8];
+        } else {
+            Arrays.fill(frames[depth], null); // Re-used from an earlier scope at this depth
         }
     }
 
+    private void popScope() {
+        depth--;
+    }
+
+    // NOTE: Operations are evaluated with explicit stacks (post-order: both sides first, then the operation), no recursion.
     private Literal evaluateExpression(Expression expr) {
+        if (!(expr instanceof Operation)) {
+            return evaluateOperand(expr);
+        }
+
+        HANStack<Expression> work = new HANStack<>();
+        HANIntStack sidesDone = new HANIntStack(); // Per expression on 'work': 0 = sides still to do, 1 = sides done
+        HANStack<Literal> values = new HANStack<>();
+
+        work.push(expr);
+        sidesDone.push(0);
+
+        while (!work.isEmpty()) {
+            Expression current = work.pop();
+            boolean done = sidesDone.pop() == 1;
+
+            if (!(current instanceof Operation)) {
+                values.push(evaluateOperand(current));
+            } else if (!done) {
+                // Come back to this operation once both sides are evaluated (lhs comes off the stack first)
+                Operation op = (Operation) current;
+                work.push(op);
+                sidesDone.push(1);
+                work.push(op.rhs);
+                sidesDone.push(0);
+                work.push(op.lhs);
+                sidesDone.push(0);
+            } else {
+                Literal rhs = values.pop();
+                Literal lhs = values.pop();
+                values.push(evaluateOperation((Operation) current, lhs, rhs));
+            }
+        }
+        return values.pop();
+    }
+
+    private Literal evaluateOperand(Expression expr) {
         if (expr == null) return null; // Guard
 
         // If expression is already evaluated
@@ -97,27 +202,83 @@ public class Evaluator implements Transform {
             return (Literal) expr;
         }
 
-        // Resolve variable
         if (expr instanceof VariableReference) {
-            VariableReference ref = (VariableReference) expr;
-            return cloneLiteral(variableValues.get(ref.name));
+            return cloneLiteral(valueOf((VariableReference) expr));
         }
 
-        // Eval operations
-        if (expr instanceof Operation) {
-            Operation op = (Operation) expr;
+        if (expr instanceof SumOperation) {
+            return evaluateSum((SumOperation) expr);
+        }
+        if (expr instanceof ProductOperation) {
+            return evaluateProduct((ProductOperation) expr);
+        }
+
+        return null;
+    }
+
+    // Resolve variable, just an array index thanks to the Resolver. The value itself, so only to read from.
+    private Literal valueOf(VariableReference ref) {
+        resolvedVariables++;
+        if (!ref.isResolved()) return null;
 
-            // Recurse
-            Literal lhs = evaluateExpression(op.lhs);
-            Literal rhs = evaluateExpression(op.rhs);
+        Literal[] frame = frames[ref.scopeDepth];
+        return ref.slot < frame.length ? frame[ref.slot] : null;
+    }
 
-            return evaluateOperation(op, lhs, rhs);
+    // Value of an operand of an n-ary operation, literals and variables aren't copied (only read by the loops below)
+    private Literal operandValue(Expression operand) {
+        if (operand instanceof Literal) return (Literal) operand;
+        if (operand instanceof VariableReference) return valueOf((VariableReference) operand);
+        return evaluateExpression(operand);
+    }
+
+    /*
+     NOTE:
+     A flattened chain (see OperationFlattener) is worked out left to right in an int, the same math as handleAdd and
+     handleSubtract per step, but only the result becomes a literal. So a long chain is linear and doesn't allocate per operand.
+     */
+    private Literal evaluateSum(SumOperation sum) {
+        Literal first = operandValue(sum.operands[0]);
+        if (first == null) return null;
+
+        ExpressionType type = first.getType();
+        if (type != ExpressionType.COLOR && !isDimension(type)) return null;
+
+        int value = type == ExpressionType.COLOR ? ((ColorLiteral) first).value : dimensionValue(first);
+        for (int i = 1; i < sum.size(); i++) {
+            Literal operand = operandValue(sum.operands[i]);
+            if (operand == null || operand.getType() != type) return null;
+
+            if (type == ExpressionType.COLOR) {
+                int rgb = ((ColorLiteral) operand).value;
+                value = sum.negated[i] ? subtractChannels(value, rgb) : addChannels(value, rgb);
+            } else {
+                value = sum.negated[i] ? value - dimensionValue(operand) : value + dimensionValue(operand);
+            }
         }
+        return type == ExpressionType.COLOR ? new ColorLiteral(value) : dimension(type, value);
+    }
 
-        return null;
+    // Same as handleMultiply per step: at most one operand can be a pixel/percentage, the rest are scalars
+    private Literal evaluateProduct(ProductOperation product) {
+        ExpressionType type = ExpressionType.SCALAR;
+        int value = 1;
+
+        for (int i = 0; i < product.size(); i++) {
+            Literal operand = operandValue(product.operands[i]);
+            if (operand == null || !isDimension(operand.getType())) return null;
+
+            if (operand.getType() != ExpressionType.SCALAR) {
+                if (type != ExpressionType.SCALAR) return null;
+                type = operand.getType();
+            }
+            value *= dimensionValue(operand);
+        }
+        return dimension(type, value);
     }
 
-    private Literal evaluateOperation(Operation op, Literal lhs, Literal rhs) {
+    // NOTE: Static (package) so the ConstantFolder does the exact same math at compile time
+    static Literal evaluateOperation(Operation op, Literal lhs, Literal rhs) {
         if (lhs == null || rhs == null) return null; // Guard
 
         if (op instanceof AddOperation) // + (ADD)
@@ -130,56 +291,109 @@ public class Evaluator implements Transform {
         return null;
     }
 
-    private Literal handleAdd(Literal lhs, Literal rhs) {
-        if (lhs instanceof PixelLiteral && rhs instanceof PixelLiteral)
-            return new PixelLiteral(((PixelLiteral) lhs).value + ((PixelLiteral) rhs).value);
-        if (lhs instanceof PercentageLiteral && rhs instanceof PercentageLiteral)
-            return new PercentageLiteral(((PercentageLiteral) lhs).value + ((PercentageLiteral) rhs).value);
-        if (lhs instanceof ScalarLiteral && rhs instanceof ScalarLiteral)
-            return new ScalarLiteral(((ScalarLiteral) lhs).value + ((ScalarLiteral) rhs).value);
-        return null;
+    // NOTE: Dispatches on the type of the literals (Expression.getType), instead of an instanceof per combination
+    private static Literal handleAdd(Literal lhs, Literal rhs) {
+        ExpressionType type = lhs.getType();
+        if (type != rhs.getType()) return null;
+
+        if (type == ExpressionType.COLOR)
+            return new ColorLiteral(addChannels(((ColorLiteral) lhs).value, ((ColorLiteral) rhs).value));
+        return isDimension(type) ? dimension(type, dimensionValue(lhs) + dimensionValue(rhs)) : null;
     }
 
-    private Literal handleSubtract(Literal lhs, Literal rhs) {
-        if (lhs instanceof PixelLiteral && rhs instanceof PixelLiteral)
-            return new PixelLiteral(((PixelLiteral) lhs).value - ((PixelLiteral) rhs).value);
-        if (lhs instanceof PercentageLiteral && rhs instanceof PercentageLiteral)
-            return new PercentageLiteral(((PercentageLiteral) lhs).value - ((PercentageLiteral) rhs).value);
-        if (lhs instanceof ScalarLiteral && rhs instanceof ScalarLiteral)
-            return new ScalarLiteral(((ScalarLiteral) lhs).value - ((ScalarLiteral) rhs).value);
-        return null;
+    private static Literal handleSubtract(Literal lhs, Literal rhs) {
+        ExpressionType type = lhs.getType();
+        if (type != rhs.getType()) return null;
+
+        if (type == ExpressionType.COLOR)
+            return new ColorLiteral(subtractChannels(((ColorLiteral) lhs).value, ((ColorLiteral) rhs).value));
+        return isDimension(type) ? dimension(type, dimensionValue(lhs) - dimensionValue(rhs)) : null;
     }
 
-    // NOTE: Can use bit-shifting for faster math?
-    private Literal handleMultiply(Literal lhs, Literal rhs) {
+    // Colors are added per channel (0xRRGGBB), a channel stops at 0xff: #ff8000 + #020202 = #ff8202
+    private static int addChannels(int lhs, int rhs) {
+        int rgb = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int channel = ((lhs >> shift) & 0xFF) + ((rhs >> shift) & 0xFF);
+            rgb |= Math.min(channel, 0xFF) << shift;
+        }
+        return rgb;
+    }
 
-        if (lhs instanceof ScalarLiteral && rhs instanceof ScalarLiteral)
-            return new ScalarLiteral(((ScalarLiteral) lhs).value * ((ScalarLiteral) rhs).value);
+    // Same, a channel stops at 0: #ff8000 - #020202 = #fd7e00
+    private static int subtractChannels(int lhs, int rhs) {
+        int rgb = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int channel = ((lhs >> shift) & 0xFF) - ((rhs >> shift) & 0xFF);
+            rgb |= Math.max(channel, 0) << shift;
+        }
+        return rgb;
+    }
 
-        if (lhs instanceof ScalarLiteral && rhs instanceof PixelLiteral)
-            return new PixelLiteral(((ScalarLiteral) lhs).value * ((PixelLiteral) rhs).value);
-        if (lhs instanceof PixelLiteral && rhs instanceof ScalarLiteral)
-            return new PixelLiteral(((PixelLiteral) lhs).value * ((ScalarLiteral) rhs).value);
+    // NOTE: Can use bit-shifting for faster math?
+    // A scalar times a dimension keeps the type of the dimension (scalar * scalar is a scalar)
+    private static Literal handleMultiply(Literal lhs, Literal rhs) {
+        ExpressionType lhsType = lhs.getType();
+        ExpressionType rhsType = rhs.getType();
 
-        if (lhs instanceof ScalarLiteral && rhs instanceof PercentageLiteral)
-            return new PercentageLiteral(((ScalarLiteral) lhs).value * ((PercentageLiteral) rhs).value);
-        if (lhs instanceof PercentageLiteral && rhs instanceof ScalarLiteral)
-            return new PercentageLiteral(((PercentageLiteral) lhs).value * ((ScalarLiteral) rhs).value);
+        if (lhsType == ExpressionType.SCALAR && isDimension(rhsType))
+            return dimension(rhsType, dimensionValue(lhs) * dimensionValue(rhs));
+        if (rhsType == ExpressionType.SCALAR && isDimension(lhsType))
+            return dimension(lhsType, dimensionValue(lhs) * dimensionValue(rhs));
 
         return null;
     }
 
-    private Literal cloneLiteral(Literal lit) {
-        if (lit instanceof PixelLiteral)
-            return new PixelLiteral(((PixelLiteral) lit).value);
-        if (lit instanceof PercentageLiteral)
-            return new PercentageLiteral(((PercentageLiteral) lit).value);
-        if (lit instanceof ScalarLiteral)
-            return new ScalarLiteral(((ScalarLiteral) lit).value);
-        if (lit instanceof ColorLiteral)
-            return new ColorLiteral(((ColorLiteral) lit).value);
-        if (lit instanceof BoolLiteral)
-            return new BoolLiteral(((BoolLiteral) lit).value);
-        return null;
+    private static boolean isDimension(ExpressionType type) {
+        return type == ExpressionType.PIXEL || type == ExpressionType.PERCENTAGE || type == ExpressionType.SCALAR;
+    }
+
+    // Value of a pixel, percentage or scalar literal (see isDimension)
+    private static int dimensionValue(Literal literal) {
+        switch (literal.getType()) {
+            case PIXEL:
+                return ((PixelLiteral) literal).value;
+            case PERCENTAGE:
+                return ((PercentageLiteral) literal).value;
+            default:
+                return ((ScalarLiteral) literal).value;
+        }
+    }
+
+    // New pixel, percentage or scalar literal
+    private static Literal dimension(ExpressionType type, int value) {
+        switch (type) {
+            case PIXEL:
+                return new PixelLiteral(value);
+            case PERCENTAGE:
+                return new PercentageLiteral(value);
+            case SCALAR:
+                return new ScalarLiteral(value);
+            default:
+                return null;
+        }
+    }
+
+    static Literal cloneLiteral(Literal lit) {
+        if (lit == null) return null;
+
+        switch (lit.getType()) {
+            case COLOR:
+                return new ColorLiteral(((ColorLiteral) lit).value);
+            case BOOL:
+                return new BoolLiteral(((BoolLiteral) lit).value);
+            default:
+                return dimension(lit.getType(), dimensionValue(lit));
+        }
+    }
+
+    // Position in a body that is being rewritten
+    private static final class Cursor {
+        final List<ASTNode> nodes;
+        int next = 0;
+
+        Cursor(List<ASTNode> nodes) {
+            this.nodes = nodes;
+        }
     }
 }
@@ -0,0 +1,110 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.icss.ast.*;
+import nl.han.ica.icss.ast.operations.*;
+
+/*
+ Normalization pass (hooks, see PassManager): turns chains of binary operations with the same precedence into one
+ n-ary operation, so the Evaluator works them out in a single loop with one literal for the result, instead of a literal
+ per operation.
+ - A chain of + and - becomes a SumOperation: 'A + B - C + D', parsed as ((A + B) - C) + D, is Sum[A, B, -C, D].
+ - A chain of * becomes a ProductOperation: 'A * B * C' is Product[A, B, C].
+ A product inside a sum (e.g. the 'B * 2' in 'A + B * 2') is one operand of the sum, and becomes a product itself.
+
+ NOTE:
+ - The operands keep their source order and are worked out left to right, same as the binary chain: a color channel
+   stops at 0x00/0xff on the way, so the order matters (#ff0000 + #ff0000 - #ff0000 is #000000, not #ff0000).
+ - Works on the expression of a declaration/assignment as a whole (top-down), so every chain is walked once and its
+   arrays get the right size right away. Runs after the ConstantFolder in the same walk, so what can be folded is gone.
+ */
+public class OperationFlattener implements Transform {
+
+    // Amount of binary operations that became part of an n-ary one (for the pipeline metrics)
+    private long flattenedOperations = 0;
+
+    @Override
+    public void apply(AST ast) {
+        PassManager passes = new PassManager().add(this);
+        passes.run(ast);
+    }
+
+    @Override
+    public boolean registerHooks(AST ast, TransformHooks hooks) {
+        hooks.on(Declaration.class, this::flattenInDeclaration)
+                .on(VariableAssignment.class, this::flattenInAssignment);
+        return true;
+    }
+
+    public long getFlattenedOperations() {
+        return flattenedOperations;
+    }
+
+    private ASTNode flattenInDeclaration(Declaration declaration) {
+        declaration.expression = flatten(declaration.expression);
+        return declaration;
+    }
+
+    private ASTNode flattenInAssignment(VariableAssignment assignment) {
+        assignment.expression = flatten(assignment.expression);
+        return assignment;
+    }
+
+    private Expression flatten(Expression expression) {
+        if (isAddOrSubtract(expression)) {
+            return flattenSum((Operation) expression);
+        }
+        if (expression instanceof MultiplyOperation) {
+            return flattenProduct((Operation) expression);
+        }
+        return expression;
+    }
+
+    // The chain goes down the left side, so the operands are filled in from the back
+    private Expression flattenSum(Operation top) {
+        int size = 1;
+        for (Expression node = top; isAddOrSubtract(node); node = ((Operation) node).lhs) {
+            size++;
+        }
+
+        Expression[] operands = new Expression[size];
+        boolean[] negated = new boolean[size];
+        Expression node = top;
+        for (int i = size - 1; i > 0; i--) {
+            Operation op = (Operation) node;
+            operands[i] = flatten(op.rhs);
+            negated[i] = op instanceof SubtractOperation;
+            node = op.lhs;
+        }
+        operands[0] = flatten(node);
+        flattenedOperations += size - 1;
+
+        SumOperation sum = new SumOperation(operands, negated);
+        sum.setType(top.getType());
+        return sum;
+    }
+
+    private Expression flattenProduct(Operation top) {
+        int size = 1;
+        for (Expression node = top; node instanceof MultiplyOperation; node = ((Operation) node).lhs) {
+            size++;
+        }
+
+        Expression[] operands = new Expression[size];
+        Expression node = top;
+        for (int i = size - 1; i > 0; i--) {
+            Operation op = (Operation) node;
+            operands[i] = flatten(op.rhs);
+            node = op.lhs;
+        }
+        operands[0] = flatten(node);
+        flattenedOperations += size - 1;
+
+        ProductOperation product = new ProductOperation(operands);
+        product.setType(top.getType());
+        return product;
+    }
+
+    private static boolean isAddOrSubtract(Expression expression) {
+        return expression instanceof AddOperation || expression instanceof SubtractOperation;
+    }
+}
@@ -0,0 +1,165 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.datastructures.HANIntMap;
+import nl.han.ica.icss.ast.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ Makes the evaluated AST produce less CSS, without changing what the CSS does:
+ - Per Stylerule only the last declaration of every property is kept (the earlier ones are overridden anyway).
+ - A rule with the same declarations (same properties, values and order) as an earlier rule is merged into that rule,
+   the Generator writes the selectors of a rule as a group: 'p, .menu { ... }'.
+
+ NOTE:
+ Merging moves the declarations of the later rule up to the earlier one, so it's only done when no rule in between sets a
+ property of the same family (part before the first '-', so 'margin' and 'margin-top' are one family, shorthands included).
+ Otherwise a rule in between could win (or lose) for an element both match, because of the changed order. That's on the
+ safe side: rules are only compared on order, specificity of the selectors is left out.
+ */
+public class OutputOptimizer implements Transform {
+
+    private SymbolTable symbols;
+    private final SymbolTable families = new SymbolTable();
+    private final HANIntMap<Integer> familyOfProperty = new HANIntMap<>(); // Property symbol -> family id
+
+    // For the pipeline metrics
+    private long removedDeclarations = 0;
+    private long mergedRules = 0;
+
+    @Override
+    public List<Class<? extends Transform>> getDependencies() {
+        return List.of(Evaluator.class); // Needs the flattened rules with literal values
+    }
+
+    @Override
+    public void apply(AST ast) {
+        if (ast.root == null) return;
+        symbols = ast.symbols;
+
+        ArrayList<ASTNode> result = new ArrayList<>(ast.root.body.size());
+        Map<List<ASTNode>, Integer> ruleWithBody = new HashMap<>(); // Declarations -> index in result of the rule that has them
+        HANIntMap<Integer> lastRuleOfFamily = new HANIntMap<>(); // Family id -> index in result of the last rule that sets it
+
+        for (ASTNode node : ast.root.body) {
+            if (!(node instanceof Stylerule)) {
+                // Nothing else is left after the evaluator, but don't move rules over whatever it is
+                ruleWithBody.clear();
+                result.add(node);
+                continue;
+            }
+
+            Stylerule rule = (Stylerule) node;
+            removeOverriddenDeclarations(rule);
+
+            boolean mergeable = isMergeable(rule);
+            Integer target = mergeable ? ruleWithBody.get(rule.body) : null;
+            if (target != null && canMoveTo(rule, target, lastRuleOfFamily)) {
+                addSelectors((Stylerule) result.get(target), rule);
+                mergedRules++;
+                continue;
+            }
+
+            int index = result.size();
+            result.add(rule);
+            if (mergeable) {
+                ruleWithBody.put(rule.body, index);
+            }
+            for (ASTNode child : rule.body) {
+                if (child instanceof Declaration && ((Declaration) child).property != null) {
+                    lastRuleOfFamily.put(familyOf((Declaration) child), index);
+                }
+            }
+        }
+        ast.root.body = result;
+        ast.root.invalidateHash(); // Fields are set directly, see ASTNode.structuralHash
+    }
+
+    public long getRemovedDeclarations() {
+        return removedDeclarations;
+    }
+
+    public long getMergedRules() {
+        return mergedRules;
+    }
+
+    // Keeps the last declaration of every property, walks the body back to front so that's the first one seen
+    private void removeOverriddenDeclarations(Stylerule rule) {
+        BitSet seen = new BitSet();
+        ArrayList<ASTNode> kept = new ArrayList<>(rule.body.size());
+
+        for (int i = rule.body.size() - 1; i >= 0; i--) {
+            ASTNode child = rule.body.get(i);
+            if (child instanceof Declaration && ((Declaration) child).property != null) {
+                int property = symbols.symbolOf(((Declaration) child).property);
+                if (seen.get(property)) {
+                    removedDeclarations++;
+                    continue;
+                }
+                seen.set(property);
+            }
+            kept.add(child);
+        }
+
+        if (kept.size() < rule.body.size()) {
+            rule.body = reversed(kept);
+            rule.invalidateHash();
+        }
+    }
+
+    // Only rules that are nothing but (evaluated) declarations are compared, an empty rule isn't worth a merge
+    private static boolean isMergeable(Stylerule rule) {
+        if (rule.body.isEmpty()) return false;
+
+        for (ASTNode child : rule.body) {
+            if (!(child instanceof Declaration)) return false;
+
+            Declaration declaration = (Declaration) child;
+            if (declaration.property == null || !(declaration.expression instanceof Literal)) return false;
+        }
+        return true;
+    }
+
+    // True when no rule after the target sets a property (family) of this rule
+    private boolean canMoveTo(Stylerule rule, int target, HANIntMap<Integer> lastRuleOfFamily) {
+        for (ASTNode child : rule.body) {
+            Integer last = lastRuleOfFamily.get(familyOf((Declaration) child));
+            if (last != null && last > target) return false;
+        }
+        return true;
+    }
+
+    private static void addSelectors(Stylerule target, Stylerule rule) {
+        for (Selector selector : rule.selectors) {
+            if (!target.selectors.contains(selector)) {
+                target.selectors.add(selector);
+            }
+        }
+        target.invalidateHash();
+    }
+
+    private int familyOf(Declaration declaration) {
+        int property = symbols.symbolOf(declaration.property);
+        Integer family = familyOfProperty.get(property);
+
+        if (family == null) {
+            String name = declaration.property.name;
+            int dash = name.indexOf('-');
+            family = families.intern(name, 0, dash < 0 ? name.length() : dash);
+            familyOfProperty.put(property, family);
+        }
+        return family;
+    }
+
+    private static ArrayList<ASTNode> reversed(ArrayList<ASTNode> nodes) {
+        ArrayList<ASTNode> result = new ArrayList<>(nodes.size());
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            result.add(nodes.get(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,220 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.datastructures.HANStack;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Stylesheet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ Runs the transform passes over an AST, in an order that respects their dependencies (see Transform.getDependencies).
+
+ Passes that register node hooks (see Transform.registerHooks) and come right after each other in that order are fused:
+ they share one post-order walk of the tree, per node the hooks run in pass order. So adding a hook pass doesn't add a
+ full tree walk. A pass without hooks (e.g. the Evaluator) runs on its own with 'apply', between the fused walks.
+
+ NOTE:
+ - A hook pass registers its hooks right before the walk it's part of, so it sees the tree as it was before that walk
+   (not yet rewritten by the passes it's fused with). A pass that needs to look at their result has to be opaque.
+ - Replacing a child is done on the parent once all its children are done (ASTNode.replaceChildren), so a body is
+   rebuilt once, however many of its nodes are replaced or removed.
+ */
+public class PassManager {
+
+    private final List<Transform> passes = new ArrayList<>();
+
+    // Time per pass of the last run (only when timed), and the amount of walks the fused passes needed
+    private boolean timed = false;
+    private final Map<String, Long> passNanos = new LinkedHashMap<>();
+    private int fusedWalks = 0;
+
+    public PassManager add(Transform pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    // Measures time per pass (two System.nanoTime() calls per hook call, so off by default)
+    public void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+
+    public void run(AST ast) {
+        passNanos.clear();
+        fusedWalks = 0;
+
+        List<Transform> fused = new ArrayList<>();
+        List<TransformHooks> fusedHooks = new ArrayList<>();
+
+        for (Transform pass : getOrder()) {
+            TransformHooks hooks = new TransformHooks();
+            if (pass.registerHooks(ast, hooks)) {
+                fused.add(pass);
+                fusedHooks.add(hooks);
+                continue;
+            }
+
+            // Opaque pass, everything before it has to be done first
+            walk(ast, fused, fusedHooks);
+            fused.clear();
+            fusedHooks.clear();
+
+            long start = System.nanoTime();
+            pass.apply(ast);
+            record(pass, System.nanoTime() - start);
+        }
+        walk(ast, fused, fusedHooks);
+    }
+
+    /**
+     * @return the passes in the order they run: the order they were added in, unless a pass has to wait for a dependency
+     */
+    public List<Transform> getOrder() {
+        List<Transform> ordered = new ArrayList<>(passes.size());
+        List<Transform> waiting = new ArrayList<>(passes);
+
+        for (Transform pass : passes) {
+            for (Class<? extends Transform> dependency : pass.getDependencies()) {
+                if (indexOf(passes, dependency) < 0) {
+                    throw new IllegalStateException(pass.getName() + " depends on " + dependency.getSimpleName() + ", which isn't added");
+                }
+            }
+        }
+
+        // Every round takes the first waiting pass of which all dependencies already run
+        while (!waiting.isEmpty()) {
+            int ready = -1;
+            for (int i = 0; i < waiting.size() && ready < 0; i++) {
+                ready = i;
+                for (Class<? extends Transform> dependency : waiting.get(i).getDependencies()) {
+                    if (indexOf(waiting, dependency) >= 0) {
+                        ready = -1;
+                        break;
+                    }
+                }
+            }
+            if (ready < 0) {
+                throw new IllegalStateException("Circular dependency between transform passes: " + waiting);
+            }
+            ordered.add(waiting.remove(ready));
+        }
+        return ordered;
+    }
+
+    // Time per pass (name -> nanoseconds) of the last run, opaque passes are always timed
+    public Map<String, Long> getPassNanos() {
+        return Collections.unmodifiableMap(passNanos);
+    }
+
+    public int getFusedWalks() {
+        return fusedWalks;
+    }
+
+    // One post-order walk (explicit stack, no recursion) that runs the hooks of all given passes per node
+    private void walk(AST ast, List<Transform> fused, List<TransformHooks> hooks) {
+        if (fused.isEmpty() || ast.root == null) return;
+        fusedWalks++;
+
+        TransformHooks[] passHooks = hooks.toArray(new TransformHooks[0]);
+        long[] nanos = new long[passHooks.length];
+
+        HANStack<Frame> stack = new HANStack<>();
+        stack.push(new Frame(ast.root));
+
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+
+            if (frame.next < frame.children.size()) {
+                ASTNode child = frame.children.get(frame.next++);
+                if (child != null) {
+                    stack.push(new Frame(child));
+                }
+                continue;
+            }
+
+            // All children done, put their replacements in place and rewrite the node itself
+            stack.pop();
+            ASTNode node = frame.node;
+            if (frame.replacements != null) {
+                node.replaceChildren(frame.replacements);
+            }
+
+            ASTNode result = rewrite(node, passHooks, nanos);
+            if (result == node) continue;
+
+            if (!stack.isEmpty()) {
+                stack.peek().replace(node, result);
+            } else if (result instanceof Stylesheet) {
+                ast.setRoot((Stylesheet) result);
+            } else {
+                throw new IllegalStateException("The root of the AST can only be replaced by another Stylesheet");
+            }
+        }
+
+        for (int i = 0; i < nanos.length; i++) {
+            record(fused.get(i), nanos[i]);
+        }
+    }
+
+    private ASTNode rewrite(ASTNode node, TransformHooks[] passHooks, long[] nanos) {
+        ASTNode current = node;
+
+        for (int pass = 0; pass < passHooks.length && current != null; pass++) {
+            TransformHooks.NodeHook<ASTNode>[] matching = passHooks[pass].hooksFor(current.getClass());
+            if (matching.length == 0) continue;
+
+            long start = timed ? System.nanoTime() : 0;
+            ASTNode hooked = current;
+            for (TransformHooks.NodeHook<ASTNode> hook : matching) {
+                ASTNode result = hook.rewrite(current);
+                if (result != current) {
+                    current = result;
+                    break; // The other hooks of this pass were meant for the old node, the next passes get the new one
+                }
+            }
+            if (current == hooked) {
+                current.invalidateHash(); // Hooks may change the fields of the node they keep (a replacement is done by the parent)
+            }
+            if (timed) {
+                nanos[pass] += System.nanoTime() - start;
+            }
+        }
+        return current;
+    }
+
+    private void record(Transform pass, long nanos) {
+        passNanos.merge(pass.getName(), nanos, Long::sum);
+    }
+
+    private static int indexOf(List<Transform> passes, Class<? extends Transform> type) {
+        for (int i = 0; i < passes.size(); i++) {
+            if (type.isInstance(passes.get(i))) return i;
+        }
+        return -1;
+    }
+
+    // A node in the walk, with the replacements of its children that are done
+    private static final class Frame {
+        final ASTNode node;
+        final List<ASTNode> children;
+        int next = 0;
+        Map<ASTNode, ASTNode> replacements; // Identity based, only created when a child gets replaced
+
+        Frame(ASTNode node) {
+            this.node = node;
+            this.children = node.getChildren();
+        }
+
+        void replace(ASTNode child, ASTNode replacement) {
+            if (replacements == null) {
+                replacements = new IdentityHashMap<>();
+            }
+            replacements.put(child, replacement);
+        }
+    }
+}
@@ -2,6 +2,32 @@ package nl.han.ica.icss.transforms;
 
 import nl.han.ica.icss.ast.AST;
 
+import java.util.List;
+
+/*
+ A transformation of the AST, run by the PassManager.
+
+ A pass either rewrites the tree in 'apply' by itself (an opaque pass with its own walk, e.g. the Evaluator), or registers
+ node hooks in 'registerHooks'. Hook passes that follow each other are fused: they all run in a single walk of the tree.
+ */
 public interface Transform {
     void apply(AST ast);
+
+    // Name in the timings (and errors) of the PassManager
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    // Passes that have to run before this one (they have to be added to the same PassManager)
+    default List<Class<? extends Transform>> getDependencies() {
+        return List.of();
+    }
+
+    /**
+     * Registers the node hooks of this pass for a run over the given tree (e.g. after gathering what it needs from it).
+     * @return false when the pass has no hooks, the PassManager then calls 'apply' instead
+     */
+    default boolean registerHooks(AST ast, TransformHooks hooks) {
+        return false;
+    }
 }
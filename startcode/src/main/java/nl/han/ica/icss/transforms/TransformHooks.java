@@ -0,0 +1,63 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.icss.ast.ASTNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The node hooks of one pass, see {@link Transform#registerHooks}.
+ *
+ * A hook is called for every node of (a subclass of) the type it's registered for, after the children of that node
+ * (post-order), so it sees children that are already rewritten by all passes of the walk.
+ */
+public class TransformHooks {
+
+    @FunctionalInterface
+    public interface NodeHook<T extends ASTNode> {
+        /**
+         * @param node the node to rewrite (its children are already done)
+         * @return the node itself to keep it, another node to replace it, or null to remove it from its parent
+         */
+        ASTNode rewrite(T node);
+    }
+
+    // Hooks in the order they were registered, with the type they were registered for
+    private final List<Class<? extends ASTNode>> types = new ArrayList<>();
+    private final List<NodeHook<ASTNode>> hooks = new ArrayList<>();
+
+    // Concrete node class -> matching hooks, filled on first use
+    private final Map<Class<?>, NodeHook<ASTNode>[]> byClass = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T extends ASTNode> TransformHooks on(Class<T> type, NodeHook<? super T> hook) {
+        types.add(type);
+        hooks.add((NodeHook<ASTNode>) hook); // Only called with nodes that are an instance of 'type' (see hooksFor)
+        byClass.clear();
+        return this;
+    }
+
+    // Hooks for a node of exactly this class, cached so every node costs one map lookup
+    NodeHook<ASTNode>[] hooksFor(Class<?> nodeClass) {
+        NodeHook<ASTNode>[] matching = byClass.get(nodeClass);
+        if (matching == null) {
+            List<NodeHook<ASTNode>> found = new ArrayList<>();
+            for (int i = 0; i < hooks.size(); i++) {
+                if (types.get(i).isAssignableFrom(nodeClass)) {
+                    found.add(hooks.get(i));
+                }
+            }
+            matching = found.toArray(newHookArray(0));
+            byClass.put(nodeClass, matching);
+        }
+        return matching;
+    }
+
+    // NOTE: An array of a generic type can't be created directly, every hook in it is a NodeHook<ASTNode> (see 'on')
+    @SuppressWarnings("unchecked")
+    private static NodeHook<ASTNode>[] newHookArray(int size) {
+        return (NodeHook<ASTNode>[]) new NodeHook<?>[size];
+    }
+}
@@ -0,0 +1,107 @@
+package nl.han.ica.datastructures;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayDeque;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares HANLinkedList with java.util.LinkedList and ArrayDeque for the way the compiler uses it
+ * (scope stack: push/pop at the front, lookups walk from front to back).
+ * Run with 'mvn -Pbench test -Dbench=HANLinkedListBenchmark'.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HANLinkedListBenchmark {
+
+	@Param({"8", "64", "1024"})
+	int size;
+
+	HANLinkedList<Integer> hanList;
+	LinkedList<Integer> linkedList;
+	ArrayDeque<Integer> arrayDeque;
+
+	@Setup
+	public void setup() {
+		hanList = new HANLinkedList<>();
+		linkedList = new LinkedList<>();
+		arrayDeque = new ArrayDeque<>();
+		for (int i = 0; i < size; i++) {
+			hanList.addLast(i);
+			linkedList.addLast(i);
+			arrayDeque.addLast(i);
+		}
+	}
+
+	@Benchmark
+	public HANLinkedList<Integer> addLastHAN() {
+		HANLinkedList<Integer> list = new HANLinkedList<>();
+		for (int i = 0; i < size; i++) {
+			list.addLast(i);
+		}
+		return list;
+	}
+
+	@Benchmark
+	public LinkedList<Integer> addLastLinkedList() {
+		LinkedList<Integer> list = new LinkedList<>();
+		for (int i = 0; i < size; i++) {
+			list.addLast(i);
+		}
+		return list;
+	}
+
+	@Benchmark
+	public ArrayDeque<Integer> addLastArrayDeque() {
+		ArrayDeque<Integer> deque = new ArrayDeque<>();
+		for (int i = 0; i < size; i++) {
+			deque.addLast(i);
+		}
+		return deque;
+	}
+
+	@Benchmark
+	public void iterateHAN(Blackhole blackhole) {
+		for (Integer value : hanList) {
+			blackhole.consume(value);
+		}
+	}
+
+	// The old way the Checker walked its scopes, O(n^2)
+	@Benchmark
+	public void indexedGetHAN(Blackhole blackhole) {
+		for (int i = 0; i < hanList.getSize(); i++) {
+			blackhole.consume(hanList.get(i));
+		}
+	}
+
+	@Benchmark
+	public void iterateLinkedList(Blackhole blackhole) {
+		for (Integer value : linkedList) {
+			blackhole.consume(value);
+		}
+	}
+
+	@Benchmark
+	public void iterateArrayDeque(Blackhole blackhole) {
+		for (Integer value : arrayDeque) {
+			blackhole.consume(value);
+		}
+	}
+
+	@Benchmark
+	public long streamSumHAN() {
+		return hanList.stream().mapToLong(Integer::longValue).sum();
+	}
+
+	@Benchmark
+	public long streamSumLinkedList() {
+		return linkedList.stream().mapToLong(Integer::longValue).sum();
+	}
+}
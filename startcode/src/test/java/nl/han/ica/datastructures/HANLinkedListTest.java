@@ -0,0 +1,75 @@
+package nl.han.ica.datastructures;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HANLinkedListTest {
+
+	HANLinkedList<String> listOf(String... values) {
+		HANLinkedList<String> list = new HANLinkedList<>();
+		for (String value : values) {
+			list.addLast(value);
+		}
+		return list;
+	}
+
+	String join(HANLinkedList<String> list) {
+		return list.stream().collect(Collectors.joining(","));
+	}
+
+	@Test
+	void testAddFirstAndAddLastKeepHeadAndTail() {
+		HANLinkedList<String> list = listOf("b", "c");
+		list.addFirst("a");
+		list.addLast("d");
+		list.insert(4, "e");
+
+		assertEquals("a,b,c,d,e", join(list));
+		assertEquals("a", list.getFirst());
+		assertEquals("e", list.getLast());
+		assertEquals("d", list.get(3));
+
+		list.delete(4);
+		list.removeFirst();
+		assertEquals("b,c,d", join(list));
+		assertEquals("d", list.getLast());
+
+		list.clear();
+		assertNull(list.getFirst());
+		assertNull(list.getLast());
+	}
+
+	@Test
+	void testListIteratorRemovesAndAddsAtCursor() {
+		HANLinkedList<String> list = listOf("a", "b", "c");
+
+		ListIterator<String> iterator = list.listIterator();
+		iterator.next();
+		iterator.remove();
+		iterator.next();
+		iterator.add("x");
+		iterator.previous();
+		iterator.set("y");
+
+		assertEquals("b,y,c", join(list));
+		assertEquals("c", list.getLast());
+		assertEquals(3, list.getSize());
+	}
+
+	@Test
+	void testIteratorFailsFastOnModification() {
+		HANLinkedList<String> list = listOf("a", "b");
+
+		Iterator<String> iterator = list.iterator();
+		iterator.next();
+		list.addFirst("c");
+
+		assertThrows(ConcurrentModificationException.class, iterator::next);
+	}
+}
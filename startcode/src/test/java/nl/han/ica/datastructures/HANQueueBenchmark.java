@@ -0,0 +1,70 @@
+package nl.han.ica.datastructures;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the HANQueue variants with ArrayDeque, as a FIFO work-list (enqueue a batch, then drain it).
+ * Run with 'mvn -Pbench test -Dbench=HANQueueBenchmark'.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HANQueueBenchmark {
+
+	@Param({"16", "1024"})
+	int batch;
+
+	final Integer value = 42;
+
+	HANQueue<Integer> hanQueue;
+	BoundedHANQueue<Integer> boundedQueue;
+	SPSCHANQueue<Integer> spscQueue;
+	ArrayDeque<Integer> arrayDeque;
+
+	@Setup
+	public void setup() {
+		hanQueue = new HANQueue<>();
+		boundedQueue = new BoundedHANQueue<>(batch);
+		spscQueue = new SPSCHANQueue<>(batch);
+		arrayDeque = new ArrayDeque<>();
+	}
+
+	@Benchmark
+	public int hanQueue() {
+		for (int i = 0; i < batch; i++) hanQueue.enqueue(value);
+		int sum = 0;
+		for (int i = 0; i < batch; i++) sum += hanQueue.dequeue();
+		return sum;
+	}
+
+	@Benchmark
+	public int boundedHANQueue() {
+		for (int i = 0; i < batch; i++) boundedQueue.offer(value);
+		int sum = 0;
+		for (int i = 0; i < batch; i++) sum += boundedQueue.dequeue();
+		return sum;
+	}
+
+	// Single thread, so this only measures the cost of the ordered stores
+	@Benchmark
+	public int spscHANQueue() {
+		for (int i = 0; i < batch; i++) spscQueue.offer(value);
+		int sum = 0;
+		for (int i = 0; i < batch; i++) sum += spscQueue.dequeue();
+		return sum;
+	}
+
+	@Benchmark
+	public int arrayDeque() {
+		for (int i = 0; i < batch; i++) arrayDeque.addLast(value);
+		int sum = 0;
+		for (int i = 0; i < batch; i++) sum += arrayDeque.pollFirst();
+		return sum;
+	}
+}
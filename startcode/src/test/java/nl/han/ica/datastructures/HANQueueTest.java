@@ -0,0 +1,67 @@
+package nl.han.ica.datastructures;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HANQueueTest {
+
+	@Test
+	void testQueueGrowsWhileWrappedAround() {
+		HANQueue<Integer> queue = new HANQueue<>(4);
+
+		// Move the head to the middle of the buffer, so growing has to unwrap
+		for (int i = 0; i < 3; i++) queue.enqueue(-1);
+		for (int i = 0; i < 3; i++) queue.dequeue();
+
+		for (int i = 0; i < 10; i++) queue.enqueue(i);
+		assertEquals(10, queue.getSize());
+		assertEquals(16, queue.getCapacity());
+
+		for (int i = 0; i < 10; i++) assertEquals(i, queue.dequeue());
+		assertTrue(queue.isEmpty());
+		assertNull(queue.dequeue());
+	}
+
+	@Test
+	void testBoundedQueueRejectsWhenFull() {
+		BoundedHANQueue<String> queue = new BoundedHANQueue<>(3); // Rounded up to 4
+
+		for (int i = 0; i < 4; i++) assertTrue(queue.offer("x" + i));
+		assertTrue(queue.isFull());
+		assertFalse(queue.offer("y"));
+		assertThrows(IllegalStateException.class, () -> queue.enqueue("y"));
+
+		assertEquals("x0", queue.dequeue());
+		assertTrue(queue.offer("y"));
+		assertEquals(4, queue.getCapacity());
+	}
+
+	@Test
+	void testSPSCQueueHandsOverInOrder() {
+		SPSCHANQueue<Integer> queue = new SPSCHANQueue<>(64);
+		int count = 10_000;
+
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			// Both sides back off when they can't go on, so a single core still switches to the other side
+			Thread producer = new Thread(() -> {
+				for (int i = 0; i < count; i++) {
+					while (!queue.offer(i)) LockSupport.parkNanos(10_000);
+				}
+			});
+			producer.setDaemon(true); // Doesn't keep the JVM alive when the timeout hits
+			producer.start();
+
+			for (int expected = 0; expected < count; expected++) {
+				Integer value;
+				while ((value = queue.dequeue()) == null) Thread.yield();
+				assertEquals(expected, value);
+			}
+			producer.join();
+		});
+		assertTrue(queue.isEmpty());
+	}
+}
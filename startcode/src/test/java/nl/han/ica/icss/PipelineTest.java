@@ -0,0 +1,355 @@
+package nl.han.ica.icss;
+
+import com.google.common.io.Resources;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.Declaration;
+import nl.han.ica.icss.ast.Operation;
+import nl.han.ica.icss.ast.Stylerule;
+import nl.han.ica.icss.ast.VariableAssignment;
+import nl.han.ica.icss.ast.VariableReference;
+import nl.han.ica.icss.ast.types.ExpressionType;
+import nl.han.ica.icss.ast.types.PropertySchema;
+import nl.han.ica.icss.metrics.PipelineMetrics;
+import nl.han.ica.icss.parser.Fixtures;
+import nl.han.ica.icss.parser.ParserPool;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineTest {
+
+	String readTestFile(String resource) throws IOException {
+		return Resources.toString(Resources.getResource(resource), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void testPooledParserIsReusedBetweenParses() throws IOException {
+		Pipeline pipeline = new Pipeline();
+
+		pipeline.parseString(readTestFile("level3.icss"));
+		assertTrue(pipeline.isParsed());
+
+		// Second parse with the same (pooled) parser, should not carry over state from the first one
+		pipeline.parseString(readTestFile("level0.icss"));
+		assertTrue(pipeline.isParsed());
+		assertEquals(Fixtures.uncheckedLevel0(), pipeline.getAST());
+	}
+
+	@Test
+	void testSyntaxErrorsAreReportedByPooledParser() throws IOException {
+		Pipeline pipeline = new Pipeline();
+
+		pipeline.parseString("p { width 10px; }");
+		assertFalse(pipeline.isParsed());
+		assertFalse(pipeline.getErrors().isEmpty());
+
+		pipeline.parseString(readTestFile("level1.icss"));
+		assertTrue(pipeline.isParsed());
+		assertEquals(Fixtures.uncheckedLevel1(), pipeline.getAST());
+	}
+
+	@Test
+	void testWarmUpAndClearDFACache() {
+		assertEquals(4, ParserPool.warmUp());
+		assertTrue(ParserPool.getDFACacheSize() > 0);
+
+		assertFalse(ParserPool.clearDFACacheIfLargerThan(Integer.MAX_VALUE));
+		assertTrue(ParserPool.clearDFACacheIfLargerThan(0));
+		assertEquals(0, ParserPool.getDFACacheSize());
+	}
+
+	@Test
+	void testMetricsPerStage() throws IOException {
+		Pipeline pipeline = new Pipeline();
+		pipeline.setCollectMetrics(true);
+
+		assertNotNull(pipeline.compile(readTestFile("level3.icss")));
+
+		PipelineMetrics metrics = pipeline.getMetrics();
+		assertEquals(4, metrics.getStages().size());
+		assertEquals(4, metrics.getStage("parse").getCounters().get("rules"));
+		assertTrue(metrics.getStage("parse").getCounters().get("tokens") > 0);
+		// All variables of level3 are constants, the ConstantFolder replaces them before the evaluator runs
+		assertEquals(7, metrics.getStage("transform").getCounters().get("propagatedConstants"));
+		assertEquals(0, metrics.getStage("transform").getCounters().get("variablesResolved"));
+		assertTrue(metrics.toJson().startsWith("{\"stages\":[{\"stage\":\"parse\""));
+
+		// E.g. an input path with a tab, quote and backslash in it (--metrics)
+		StringBuilder json = new StringBuilder();
+		PipelineMetrics.appendJsonString(json, "my\tdir\\\"x\".icss\n");
+		assertEquals("\"my\\u0009dir\\\\\\\"x\\\".icss\\u000a\"", json.toString());
+	}
+
+	@Test
+	void testParallelGenerationKeepsSourceOrder() throws InterruptedException {
+		// Enough rules to go over the parallel threshold of the generator
+		StringBuilder source = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			source.append("#rule").append(i).append(" { width: ").append(i).append("px; }\n");
+			expected.append("#rule").append(i).append(" {\n  width: ").append(i).append("px;\n}\n");
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			Pipeline pipeline = new Pipeline();
+			pipeline.setGenerateExecutor(executor, 3);
+			assertEquals(expected.toString(), pipeline.compile(source.toString()));
+
+			// Helpers that never get a thread: the calling thread does all of the work instead of waiting for them
+			List<Runnable> neverRun = new ArrayList<>();
+			pipeline.setGenerateExecutor(neverRun::add, 3);
+			assertEquals(expected.toString(), pipeline.compile(source.toString()));
+			assertEquals(3, neverRun.size());
+		} finally {
+			executor.shutdownNow();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void testVeryDeepTreesDoNotOverflowTheStack() {
+		// Long operation chain (a very deep left-leaning tree) and deeply nested if-clauses
+		// NOTE: The ifs use a literal, a variable would be looked up through every (nested) scope.
+		int depth = 100_000;
+		String chain = "A := 1px" + " + 1px".repeat(depth) + ";\np { width: A; }\n";
+		String ifs = "p {" + " if [TRUE] {".repeat(depth) + " width: 1px; " + "}".repeat(depth) + " }\n";
+
+		assertEquals("p {\n  width: " + (depth + 1) + "px;\n}\n", new Pipeline().compile(chain));
+
+		Pipeline first = new Pipeline();
+		Pipeline second = new Pipeline();
+		first.parseString(ifs);
+		second.parseString(ifs);
+		assertTrue(first.isParsed());
+		assertEquals(first.getAST(), second.getAST());
+		assertEquals(second.getAST().toString(), first.getAST().toString());
+
+		assertTrue(first.check());
+		first.transform();
+		assertEquals("p {\n  width: 1px;\n}\n", first.generate());
+	}
+
+	@Test
+	void testVariablesAreResolvedPerScope() {
+		String source = "A := 1px;\n"
+				+ "p { A := 2px; width: A; }\n"
+				+ "a { width: A; if [TRUE] { B := 5px; height: B; } }\n";
+
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(source);
+		assertTrue(pipeline.check());
+
+		// The A in 'a' is the global one (scope 0, slot 0), the one in 'p' shadows it in the scope of the rule
+		Stylerule p = (Stylerule) pipeline.getAST().root.body.get(1);
+		Stylerule a = (Stylerule) pipeline.getAST().root.body.get(2);
+		VariableReference shadowed = (VariableReference) ((Declaration) p.body.get(1)).expression;
+		VariableReference global = (VariableReference) ((Declaration) a.body.get(0)).expression;
+		assertEquals(1, shadowed.scopeDepth);
+		assertEquals(0, global.scopeDepth);
+		assertEquals(0, global.slot);
+
+		pipeline.transform();
+		assertEquals("p {\n  width: 2px;\n}\na {\n  width: 1px;\n  height: 5px;\n}\n", pipeline.generate());
+	}
+
+	@Test
+	void testNamesAreInternedPerCompile() {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString("A := 1px;\np { width: A; }\np { width: A; height: A; }\n");
+		assertTrue(pipeline.isParsed());
+
+		// Every occurrence of a name shares one String and one symbol id
+		Stylerule first = (Stylerule) pipeline.getAST().root.body.get(1);
+		Stylerule second = (Stylerule) pipeline.getAST().root.body.get(2);
+		VariableReference a1 = (VariableReference) ((Declaration) first.body.get(0)).expression;
+		VariableReference a2 = (VariableReference) ((Declaration) second.body.get(1)).expression;
+		assertSame(a1.name, a2.name);
+		assertEquals(a1.symbol, a2.symbol);
+		assertEquals(((Declaration) first.body.get(0)).property.symbol, ((Declaration) second.body.get(0)).property.symbol);
+
+		// A and p, the property names are already in there (same ids as in the schema)
+		assertEquals(PropertySchema.get().getSize() + 2, pipeline.getAST().symbols.getSize());
+		assertEquals("width", PropertySchema.get().getName(((Declaration) first.body.get(0)).property.symbol));
+		assertEquals("A", pipeline.getAST().symbols.getName(a1.symbol));
+	}
+
+	@Test
+	void testPropertiesFromTheSchema() {
+		assertEquals("p {\n  margin-top: 10px;\n  opacity: 50%;\n  border-color: #ff0000;\n}\n",
+				new Pipeline().compile("p { margin-top: 2 * 5px; opacity: 50%; border-color: #ff0000; }"));
+
+		// Parses as a dimension, but z-index only takes a SCALAR
+		Pipeline pipeline = new Pipeline();
+		assertNull(pipeline.compile("p { z-index: 10px; }"));
+		assertEquals(1, pipeline.getErrors().size());
+		assertTrue(pipeline.getErrors().get(0).contains("z-index"));
+
+		// Not a property, so it stays an identifier (a syntax error in a declaration)
+		pipeline = new Pipeline();
+		pipeline.parseString("p { colour: #ff0000; }");
+		assertFalse(pipeline.isParsed());
+	}
+
+	@Test
+	void testIfClausesAreReplacedInSourceOrder() {
+		String source = "B := FALSE;\n"
+				+ "p { width: 1px; if [TRUE] { height: 2px; if [B] { width: 3px; } else { width: 4px; } height: 5px; } width: 6px; }\n";
+
+		Pipeline pipeline = new Pipeline();
+		pipeline.setOptimizeOutput(false); // Would keep only the last width and height
+		assertEquals("p {\n  width: 1px;\n  height: 2px;\n  width: 4px;\n  height: 5px;\n  width: 6px;\n}\n", pipeline.compile(source));
+
+		// Only declarations are left in the body of the rule
+		Stylerule p = (Stylerule) pipeline.getAST().root.body.get(0);
+		assertEquals(5, p.body.size());
+		assertTrue(p.body.stream().allMatch(node -> node instanceof Declaration));
+	}
+
+	@Test
+	void testConstantsAreFoldedOnceAndCached() {
+		String source = "W := 10px;\nX := W * 2 + 5px;\nFlag := FALSE;\nY := 1px;\nY := 2px;\n"
+				+ "p { W := 3px; width: W + X; height: Y; if [Flag] { color: #ff0000; } else { Z := X; width: Z; } }\n";
+		String css = "p {\n  width: 28px;\n  height: 2px;\n  width: 25px;\n}\n";
+
+		Pipeline pipeline = new Pipeline();
+		pipeline.setCollectMetrics(true);
+		pipeline.setOptimizeOutput(false);
+		pipeline.parseString(source);
+		assertTrue(pipeline.check());
+		AST checked = pipeline.getAST();
+		AST unfolded = checked.copy();
+		pipeline.transform();
+		assertEquals(css, pipeline.generate());
+		assertEquals(unfolded, checked); // A copy is folded, the checked AST (e.g. shown by the GUI) stays as it is
+
+		Map<String, Long> counters = pipeline.getMetrics().getStage("transform").getCounters();
+		assertEquals(2L, counters.get("foldedOperations")); // W * 2 and (...) + 5px, not W + X (W is local there)
+		assertEquals(1L, counters.get("prunedBranches"));
+		assertEquals(4L, counters.get("propagatedConstants")); // W in X, X in 'W + X' and 'Z := X', Flag (Y isn't a constant)
+
+		// Transforming again evaluates the cached optimized AST, it isn't folded again
+		pipeline.transform();
+		assertEquals(css, pipeline.generate());
+		assertFalse(pipeline.getMetrics().getStage("transform").getCounters().containsKey("foldedOperations"));
+	}
+
+	@Test
+	void testOverriddenDeclarationsAreRemovedAndRulesMerged() {
+		String source = "p { width: 1px; color: #000000; width: 2px; }\n"
+				+ "a { color: #000000; width: 2px; }\n"
+				+ ".menu { margin-top: 3px; }\n"
+				+ "#nav { margin: 4px; }\n"
+				+ "h1 { margin-top: 3px; }\n" // Can't move over #nav, margin sets margin-top too
+				+ "p { color: #000000; width: 2px; }\n";
+
+		Pipeline pipeline = new Pipeline();
+		pipeline.setCollectMetrics(true);
+		assertEquals("p, a {\n  color: #000000;\n  width: 2px;\n}\n"
+				+ ".menu {\n  margin-top: 3px;\n}\n"
+				+ "#nav {\n  margin: 4px;\n}\n"
+				+ "h1 {\n  margin-top: 3px;\n}\n", pipeline.compile(source));
+
+		Map<String, Long> counters = pipeline.getMetrics().getStage("transform").getCounters();
+		assertEquals(1L, counters.get("removedDeclarations"));
+		assertEquals(2L, counters.get("mergedRules"));
+	}
+
+	@Test
+	void testNumbersAreDecodedWithoutOverflow() {
+		Pipeline pipeline = new Pipeline();
+		assertEquals("p {\n  width: 2147483647px;\n  opacity: 7%;\n  z-index: 12;\n}\n",
+				pipeline.compile("p { width: 2147483647px; opacity: 007%; z-index: 12; }"));
+
+		// One more doesn't fit in an int: a semantic error, not a NumberFormatException
+		assertNull(pipeline.compile("p { width: 2147483648px; }"));
+		assertEquals(1, pipeline.getErrors().size());
+		assertTrue(pipeline.getErrors().get(0).contains("2147483648px"));
+	}
+
+	@Test
+	void testColorsArePackedAndAddedPerChannel() {
+		String source = "Base := #FF8000;\nTint := #020202;\n"
+				+ "p { color: Base - Tint; background-color: Base + Tint; border-color: #ff0000 + #00ff00; }\n";
+
+		Pipeline pipeline = new Pipeline();
+		assertEquals("p {\n  color: #fd7e00;\n  background-color: #ff8202;\n  border-color: #ffff00;\n}\n", pipeline.compile(source));
+
+		pipeline.setShortColors(true);
+		assertEquals("p {\n  color: #fd7e00;\n  background-color: #ff8202;\n  border-color: #ff0;\n}\n", pipeline.compile(source));
+
+		// Colors can't be multiplied, or added to anything else
+		assertNull(pipeline.compile("C := #ff0000 * 2;\n"));
+		assertNull(pipeline.compile("C := #ff0000 + 2px;\n"));
+	}
+
+	@Test
+	void testExpressionsAreTypedByTheChecker() {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString("A := 1px + 2 * 3px;\nB := A - 1px;\np { width: B; }\n");
+		assertTrue(pipeline.check());
+
+		VariableAssignment a = (VariableAssignment) pipeline.getAST().root.body.get(0);
+		VariableAssignment b = (VariableAssignment) pipeline.getAST().root.body.get(1);
+		assertEquals(ExpressionType.PIXEL, a.expression.getType());
+		assertEquals(ExpressionType.PIXEL, ((Operation) a.expression).rhs.getType()); // 2 * 3px
+		assertEquals(ExpressionType.PIXEL, ((Operation) b.expression).lhs.getType()); // Reference to A
+
+		// An assignment in an if-body is registered after its value is typed, like everywhere else
+		assertNull(pipeline.compile("p { if [TRUE] { Y := Y; } }\n"));
+	}
+
+	@Test
+	void testArithmeticChainsAreFlattened() {
+		// Locals aren't folded, so these chains are still there for the Evaluator (as one Sum/Product each)
+		StringBuilder width = new StringBuilder("W");
+		for (int i = 0; i < 49; i++) {
+			width.append(i % 5 == 4 ? " - W" : " + W");
+		}
+		String source = "p { W := 2px; S := 3; Red := #ff0000;\n"
+				+ "width: " + width + ";\n"
+				+ "height: W + S * W * 2 - 1px;\n"
+				+ "color: Red + Red - Red; }\n"; // Left to right: the red channel stops at ff first, then goes to 00
+		String css = "p {\n  width: 64px;\n  height: 13px;\n  color: #000000;\n}\n";
+
+		Pipeline pipeline = new Pipeline();
+		pipeline.setCollectMetrics(true);
+		pipeline.parseString(source);
+		assertTrue(pipeline.check());
+		pipeline.transform();
+		assertEquals(css, pipeline.generate());
+		assertEquals(49L + 4L + 2L, pipeline.getMetrics().getStage("transform").getCounters().get("flattenedOperations"));
+
+		// Second transform evaluates a copy of the flattened (cached) AST
+		pipeline.transform();
+		assertEquals(css, pipeline.generate());
+	}
+
+	@Test
+	void testInterruptedRunStopsAndPipelineStaysUsable() throws IOException {
+		String source = readTestFile("level3.icss");
+		Pipeline pipeline = new Pipeline();
+		String css = pipeline.compile(source);
+
+		Thread.currentThread().interrupt();
+		try {
+			assertThrows(CancellationException.class, () -> pipeline.compile(source));
+			assertFalse(pipeline.isParsed());
+		} finally {
+			Thread.interrupted(); // Clear it again for the other tests
+		}
+
+		// Next run (same pooled parser) isn't affected
+		assertEquals(css, pipeline.compile(source));
+	}
+}
@@ -0,0 +1,106 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.Pipeline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileDaemonTest {
+
+	private CompileDaemon daemon;
+	private Thread server;
+
+	@BeforeEach
+	void startDaemon() throws IOException {
+		daemon = new CompileDaemon(0, 4, 256); // Port 0: any free port
+		server = new Thread(daemon::serve, "test-daemon");
+		server.start();
+	}
+
+	@AfterEach
+	void stopDaemon() throws InterruptedException {
+		daemon.close();
+		server.join(10_000);
+	}
+
+	// Rules with long selectors: big requests and responses that are cheap to compile
+	private static String source(int rules, int selectorLength) {
+		String name = "r".repeat(selectorLength);
+		StringBuilder source = new StringBuilder("W := 10px;\n");
+		for (int i = 0; i < rules; i++) {
+			source.append('.').append(name).append(i).append(" { width: W + ").append(i).append("px; }\n");
+		}
+		return source.toString();
+	}
+
+	@Test
+	void testClientPipelinesMoreRequestsThanTheDaemonTakesInFlight(@TempDir Path dir) throws IOException {
+		// A pipelined batch (both ways) has to be more than the socket buffers hold, ~15 MB here
+		String source = source(20, 4000);
+		String css = new Pipeline().compile(source);
+
+		List<Path> inputs = new ArrayList<>();
+		for (int i = 0; i < 3 * CompileDaemon.MAX_IN_FLIGHT_PER_CONNECTION; i++) {
+			Path input = dir.resolve("style" + i + ".icss");
+			Files.writeString(input, source);
+			inputs.add(input);
+		}
+
+		// Writing all requests before reading any response deadlocks once the daemon stops reading
+		int exitCode = assertTimeoutPreemptively(Duration.ofSeconds(60), () -> CompileClient.compile(daemon.getPort(), inputs, null));
+		assertEquals(HeadlessMain.OK, exitCode);
+		for (Path input : inputs) {
+			assertEquals(css, Files.readString(HeadlessMain.toCssPath(input)));
+		}
+	}
+
+	@Test
+	void testStopAnswersTheRequestsInFlightBeforeReturning() throws Exception {
+		String source = source(50, 10);
+		String css = new Pipeline().compile(source);
+		int requests = 32;
+
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+			 DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+			byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+			for (int i = 0; i < requests; i++) {
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.flush();
+
+			// Stop while they're in flight, the daemon keeps reading until the client is done sending
+			assertEquals(HeadlessMain.OK, CompileClient.stop(daemon.getPort()));
+			socket.shutdownOutput();
+			server.join(30_000);
+			assertFalse(server.isAlive());
+
+			// serve() returned, so every response is written already: accepted ones compiled, the rest turned away
+			socket.setSoTimeout(1_000);
+			for (int i = 0; i < requests; i++) {
+				CompileDaemon.Response response = CompileDaemon.Response.readFrom(in);
+				if (response.status == CompileDaemon.OK) {
+					assertEquals(css, response.payload);
+				} else {
+					assertEquals(CompileDaemon.BUSY, response.status);
+				}
+			}
+			assertEquals(-1, in.read()); // Connection is closed after the last response
+		}
+	}
+}
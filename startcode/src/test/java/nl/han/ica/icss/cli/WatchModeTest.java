@@ -0,0 +1,59 @@
+package nl.han.ica.icss.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatchModeTest {
+
+	@Test
+	void testWriteIfChangedLeavesEqualOutputAlone(@TempDir Path dir) throws IOException {
+		Path target = dir.resolve("style.css");
+		byte[] css = "p {\n  width: 1px;\n}\n".getBytes(StandardCharsets.UTF_8);
+
+		assertTrue(WatchMode.writeIfChanged(target, css));
+		assertArrayEquals(css, Files.readAllBytes(target));
+
+		// Same bytes: the file isn't touched at all, so its modification time stays what it was
+		FileTime old = FileTime.fromMillis(0);
+		Files.setLastModifiedTime(target, old);
+		assertFalse(WatchMode.writeIfChanged(target, css.clone()));
+		assertEquals(old, Files.getLastModifiedTime(target));
+
+		// Same length, different bytes
+		byte[] changed = "p {\n  width: 2px;\n}\n".getBytes(StandardCharsets.UTF_8);
+		assertTrue(WatchMode.writeIfChanged(target, changed));
+		assertArrayEquals(changed, Files.readAllBytes(target));
+	}
+
+	@Test
+	void testBurstOfChangesIsCompiledOnce(@TempDir Path dir) throws Exception {
+		Path source = dir.resolve("style.icss");
+		Files.writeString(source, "p { width: 1px; }");
+		long debounceMillis = 300;
+
+		BlockingQueue<String> log = new LinkedBlockingQueue<>();
+		try (WatchMode watchMode = new WatchMode(debounceMillis, log::add)) {
+			// Every register sees the file as changed, all within one debounce window
+			for (int i = 0; i < 5; i++) {
+				watchMode.register(dir);
+			}
+
+			String first = log.poll(10, TimeUnit.SECONDS);
+			assertNotNull(first, "Nothing was compiled");
+			assertTrue(first.startsWith("Compiled " + source));
+			assertNull(log.poll(3 * debounceMillis, TimeUnit.MILLISECONDS), "Compiled more than once");
+		}
+		assertEquals("p {\n  width: 1px;\n}\n", Files.readString(HeadlessMain.toCssPath(source)));
+	}
+}
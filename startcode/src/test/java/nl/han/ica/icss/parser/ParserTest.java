@@ -81,4 +81,40 @@ class ParserTest {
 		AST exp = Fixtures.uncheckedLevel3();
 		assertEquals(exp,sut);
 	}
+	@Test
+	void testStructuralHashIsCachedAndInvalidated() throws IOException {
+
+		AST sut = parseTestFile("level3.icss");
+		AST exp = Fixtures.uncheckedLevel3();
+		assertEquals(exp.root.structuralHash(), sut.root.structuralHash());
+
+		// Changing a node deep down (through addChild/removeChild) changes the hash of everything above it
+		Stylerule rule = (Stylerule) sut.root.body.get(sut.root.body.size() - 1);
+		Declaration declaration = new Declaration("width");
+		rule.addChild(declaration);
+		assertNotEquals(exp.root.structuralHash(), sut.root.structuralHash());
+		assertNotEquals(exp, sut);
+
+		rule.removeChild(declaration);
+		assertEquals(exp.root.structuralHash(), sut.root.structuralHash());
+		assertEquals(exp, sut);
+
+		// Same hash for the same subtree, wherever it is
+		assertEquals(new Declaration("width").structuralHash(), declaration.structuralHash());
+	}
+
+	@Test
+	void testPropertyTokensIsAPlainCharSequence() {
+		ICSSLexer lexer = new ICSSLexer(CharStreams.fromString("p { width: 1px; }"));
+		lexer.nextToken(); // p
+		lexer.nextToken(); // {
+		assertEquals(ICSSParser.DIM_PROPERTY, lexer.nextToken().getType());
+
+		// View on what the lexer consumed so far
+		PropertyTokens consumed = new PropertyTokens(lexer);
+		assertEquals("p { width", consumed.toString());
+		assertEquals("width", consumed.subSequence(4, 9).toString());
+		assertEquals("", consumed.subSequence(3, 3).toString());
+		assertThrows(IndexOutOfBoundsException.class, () -> consumed.subSequence(4, 10));
+	}
 }
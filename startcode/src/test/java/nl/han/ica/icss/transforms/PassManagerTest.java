@@ -0,0 +1,130 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.Declaration;
+import nl.han.ica.icss.ast.Stylerule;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.generator.Generator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PassManagerTest {
+
+	// Doubles every pixel value (replaces the literal)
+	static class DoublePixels implements Transform {
+		final List<String> log;
+
+		DoublePixels(List<String> log) {
+			this.log = log;
+		}
+
+		@Override
+		public void apply(AST ast) {
+			fail("Hook passes should not be applied on their own");
+		}
+
+		@Override
+		public boolean registerHooks(AST ast, TransformHooks hooks) {
+			hooks.on(PixelLiteral.class, literal -> {
+				log.add("double " + literal.value);
+				return new PixelLiteral(literal.value * 2);
+			});
+			return true;
+		}
+	}
+
+	// Removes 'height' declarations, needs the pixels to be doubled first
+	static class DropHeight implements Transform {
+		final List<String> log;
+
+		DropHeight(List<String> log) {
+			this.log = log;
+		}
+
+		@Override
+		public void apply(AST ast) {
+			fail("Hook passes should not be applied on their own");
+		}
+
+		@Override
+		public List<Class<? extends Transform>> getDependencies() {
+			return List.of(DoublePixels.class);
+		}
+
+		@Override
+		public boolean registerHooks(AST ast, TransformHooks hooks) {
+			hooks.on(Declaration.class, declaration -> {
+				log.add("declaration " + declaration.property.name);
+				return declaration.property.name.equals("height") ? null : declaration;
+			});
+			return true;
+		}
+	}
+
+	AST parse(String source) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(source);
+		assertTrue(pipeline.check());
+		return pipeline.getAST();
+	}
+
+	@Test
+	void testHookPassesAreFusedIntoOneWalk() {
+		AST ast = parse("p { width: 1px; height: 2px; width: 3px; }\n");
+		List<String> log = new ArrayList<>();
+
+		// Added in the wrong order, DropHeight has to wait for its dependency
+		PassManager passes = new PassManager().add(new DropHeight(log)).add(new DoublePixels(log));
+		passes.setTimed(true);
+		passes.run(ast);
+
+		assertEquals(1, passes.getFusedWalks());
+		assertEquals(List.of("DoublePixels", "DropHeight"), new ArrayList<>(passes.getPassNanos().keySet()));
+
+		// Post-order: the literal of a declaration is done before the declaration itself
+		assertEquals(List.of("double 1", "declaration width", "double 2", "declaration height", "double 3", "declaration width"), log);
+		assertEquals(2, ((Stylerule) ast.root.body.get(0)).body.size());
+		assertEquals("p {\n  width: 2px;\n  width: 6px;\n}\n", new Generator().generate(ast));
+	}
+
+	@Test
+	void testOpaquePassSplitsTheWalks() {
+		AST ast = parse("A := 1px;\np { width: A; }\n");
+		List<String> log = new ArrayList<>();
+
+		// The Evaluator has no hooks, so DoublePixels runs in a walk after it (and sees the evaluated value)
+		PassManager passes = new PassManager().add(new Evaluator()).add(new DoublePixels(log));
+		passes.run(ast);
+
+		assertEquals(1, passes.getFusedWalks());
+		assertEquals(List.of("double 1"), log);
+		assertEquals("p {\n  width: 2px;\n}\n", new Generator().generate(ast));
+	}
+
+	@Test
+	void testMissingAndCircularDependencies() {
+		assertThrows(IllegalStateException.class, () -> new PassManager().add(new DropHeight(new ArrayList<>())).getOrder());
+
+		Transform first = new Transform() {
+			@Override
+			public void apply(AST ast) { }
+
+			@Override
+			public List<Class<? extends Transform>> getDependencies() {
+				return List.of(Evaluator.class);
+			}
+		};
+		Evaluator second = new Evaluator() {
+			@Override
+			public List<Class<? extends Transform>> getDependencies() {
+				return List.of(first.getClass());
+			}
+		};
+		assertThrows(IllegalStateException.class, () -> new PassManager().add(first).add(second).getOrder());
+	}
+}